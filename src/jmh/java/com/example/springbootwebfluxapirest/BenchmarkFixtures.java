@@ -0,0 +1,75 @@
+package com.example.springbootwebfluxapirest;
+
+import com.example.springbootwebfluxapirest.handler.ProductoHandler;
+import com.example.springbootwebfluxapirest.models.dao.MongoClientProperties;
+import com.example.springbootwebfluxapirest.models.dao.MongoDeadlines;
+import com.example.springbootwebfluxapirest.models.dao.ProductoDao;
+import com.example.springbootwebfluxapirest.models.documents.Categoria;
+import com.example.springbootwebfluxapirest.models.documents.Producto;
+import com.example.springbootwebfluxapirest.models.services.ProductoBatchLoader;
+import com.example.springbootwebfluxapirest.models.services.ProductoCache;
+import com.example.springbootwebfluxapirest.models.services.ProductoCollectionVersion;
+import com.example.springbootwebfluxapirest.models.services.ProductoService;
+import com.example.springbootwebfluxapirest.models.services.ProductoServiceImpl;
+import org.bson.types.ObjectId;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.validation.beanvalidation.LocalValidatorFactoryBean;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+//Arma el handler y el servicio a mano, sin contexto de Spring ni Mongo
+final class BenchmarkFixtures {
+
+    //Los eventos no se publican, el ETag del listado no cambia durante la medicion
+    static final ProductoCollectionVersion VERSION_COLECCION = new ProductoCollectionVersion();
+
+    private BenchmarkFixtures() {
+    }
+
+    static Producto producto(int i) {
+        Categoria categoria = new Categoria("Electrónico");
+        categoria.setId(new ObjectId().toHexString());
+        Producto producto = new Producto("TV Panasonic Pantalla LCD " + i, 456.89 + i, categoria);
+        producto.setCreateAt(new Date());
+        return producto;
+    }
+
+    static List<Producto> productos(int count) {
+        List<Producto> productos = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            Producto producto = producto(i);
+            producto.setId(new ObjectId().toHexString());
+            producto.setVersion(0L);
+            productos.add(producto);
+        }
+        return productos;
+    }
+
+    static ProductoService service(ProductoDao dao) {
+        ProductoServiceImpl service = new ProductoServiceImpl();
+        ReflectionTestUtils.setField(service, "dao", dao);
+        ReflectionTestUtils.setField(service, "cache", new ProductoCache(10_000, Duration.ofMinutes(5)));
+        ReflectionTestUtils.setField(service, "batchLoader", new ProductoBatchLoader(dao, 500, 4));
+        ReflectionTestUtils.setField(service, "events", (org.springframework.context.ApplicationEventPublisher) event -> {
+        });
+        MongoClientProperties mongo = new MongoClientProperties();
+        ReflectionTestUtils.setField(service, "mongoProperties", mongo);
+        ReflectionTestUtils.setField(service, "deadlines", new MongoDeadlines(mongo));
+        ReflectionTestUtils.setField(service, "versionColeccion", VERSION_COLECCION);
+        return service;
+    }
+
+    static ProductoHandler handler(ProductoService service) {
+        LocalValidatorFactoryBean validator = new LocalValidatorFactoryBean();
+        validator.afterPropertiesSet();
+        ProductoHandler handler = new ProductoHandler();
+        ReflectionTestUtils.setField(handler, "service", service);
+        ReflectionTestUtils.setField(handler, "validator", validator);
+        ReflectionTestUtils.setField(handler, "defaultLimit", 100);
+        ReflectionTestUtils.setField(handler, "maxLimit", 1000);
+        return handler;
+    }
+}
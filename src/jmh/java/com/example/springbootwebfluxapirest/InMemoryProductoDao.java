@@ -0,0 +1,98 @@
+package com.example.springbootwebfluxapirest;
+
+import com.example.springbootwebfluxapirest.models.dao.ProductoDao;
+import com.example.springbootwebfluxapirest.models.documents.Producto;
+import org.bson.types.ObjectId;
+import org.springframework.data.domain.Pageable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.function.BiFunction;
+
+//ProductoDao en memoria con solo los metodos que usan las rutas medidas.
+//Un metodo sin implementar queda anotado y verificar() lo informa en el @Setup: si fallara
+//recien durante la medicion se estaria midiendo la respuesta de error.
+final class InMemoryProductoDao implements InvocationHandler {
+
+    private static final Map<Method, BiFunction<InMemoryProductoDao, Object[], Object>> METODOS = Map.of(
+            metodo("findById", Object.class), (dao, args) -> Mono.justOrEmpty(dao.productos.get((String) args[0])),
+            metodo("findAllById", Iterable.class), (dao, args) -> Flux.fromIterable((Iterable<?>) args[0]).mapNotNull(dao.productos::get),
+            metodo("findAllBy", Pageable.class), (dao, args) -> page(dao.productos.values(), (Pageable) args[0]),
+            metodo("findByIdGreaterThan", String.class, Pageable.class),
+            (dao, args) -> page(dao.productos.tailMap((String) args[0], false).values(), (Pageable) args[1]),
+            metodo("save", Object.class), (dao, args) -> Mono.just(dao.save((Producto) args[0])));
+
+    private final NavigableMap<String, Producto> productos = new ConcurrentSkipListMap<>();
+    private final Set<String> noImplementados = ConcurrentHashMap.newKeySet();
+    private final List<Producto> seed;
+    private final ProductoDao proxy;
+
+    InMemoryProductoDao(Collection<Producto> seed) {
+        this.seed = List.copyOf(seed);
+        this.proxy = (ProductoDao) Proxy.newProxyInstance(ProductoDao.class.getClassLoader(), new Class<?>[]{ProductoDao.class}, this);
+        reset();
+    }
+
+    ProductoDao dao() {
+        return proxy;
+    }
+
+    //Vuelve a los productos iniciales, los benchmarks que crean lo llaman en cada iteracion
+    void reset() {
+        productos.clear();
+        seed.forEach(this::save);
+    }
+
+    void verificar() {
+        if (!noImplementados.isEmpty()) {
+            throw new IllegalStateException("Metodos de ProductoDao sin implementar en el benchmark: " + noImplementados);
+        }
+    }
+
+    @Override
+    public Object invoke(Object proxy, Method method, Object[] args) {
+        BiFunction<InMemoryProductoDao, Object[], Object> implementacion = METODOS.get(method);
+        if (implementacion != null) {
+            return implementacion.apply(this, args);
+        }
+        return switch (method.getName()) {
+            case "hashCode" -> System.identityHashCode(proxy);
+            case "equals" -> proxy == args[0];
+            case "toString" -> "InMemoryProductoDao";
+            default -> {
+                noImplementados.add(method.toGenericString());
+                throw new UnsupportedOperationException(method.toGenericString());
+            }
+        };
+    }
+
+    private Producto save(Producto producto) {
+        if (producto.getId() == null) {
+            producto.setId(new ObjectId().toHexString());
+        }
+        productos.put(producto.getId(), producto);
+        return producto;
+    }
+
+    private static Flux<Producto> page(Collection<Producto> productos, Pageable pageable) {
+        return Flux.fromIterable(productos).take(pageable.getPageSize());
+    }
+
+    private static Method metodo(String nombre, Class<?>... parametros) {
+        try {
+            return ProductoDao.class.getMethod(nombre, parametros);
+        } catch (NoSuchMethodException e) {
+            throw new IllegalStateException("ProductoDao ya no tiene " + nombre, e);
+        }
+    }
+}
@@ -0,0 +1,122 @@
+package com.example.springbootwebfluxapirest;
+
+import com.example.springbootwebfluxapirest.models.documents.Producto;
+import io.netty.handler.codec.http.HttpHeaderNames;
+import io.netty.handler.codec.http.HttpHeaderValues;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.springframework.boot.web.embedded.netty.NettyReactiveWebServerFactory;
+import org.springframework.boot.web.server.Compression;
+import org.springframework.boot.web.server.Http2;
+import org.springframework.boot.web.server.WebServer;
+import org.springframework.http.server.reactive.HttpHandler;
+import org.springframework.util.unit.DataSize;
+import org.springframework.web.reactive.function.server.RouterFunctions;
+import reactor.core.publisher.Mono;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.resources.ConnectionProvider;
+import reactor.netty.resources.LoopResources;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+//Prueba de carga local: servidor Netty real en un puerto libre, con la configuracion por defecto
+//o la del perfil prod, y un cliente HTTP/1.1 con keep-alive que pide gzip como un navegador.
+//Cliente y servidor comparten la JVM; para comparar por nucleo fijar los CPUs, por ejemplo
+//taskset -c 0-1 ./gradlew jmh -Pjmh.includes=NettyServerBenchmark
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Threads(32)
+public class NettyServerBenchmark {
+
+    @Param({"default", "prod"})
+    public String perfil;
+
+    private InMemoryProductoDao dao;
+    private WebServer server;
+    private LoopResources serverLoops;
+    private ConnectionProvider connections;
+    private HttpClient client;
+    private String id;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        List<Producto> productos = BenchmarkFixtures.productos(1000);
+        id = productos.get(500).getId();
+        dao = new InMemoryProductoDao(productos);
+        HttpHandler handler = RouterFunctions.toHttpHandler(new RouterFunctionConfig()
+                .routes(BenchmarkFixtures.handler(BenchmarkFixtures.service(dao.dao())), "no-cache", "no-cache"));
+
+        NettyReactiveWebServerFactory factory = new NettyReactiveWebServerFactory(0);
+        if ("prod".equals(perfil)) {
+            //Mismos valores que application-prod.properties
+            Compression compression = new Compression();
+            compression.setEnabled(true);
+            compression.setMimeTypes(new String[]{"application/json", "application/x-ndjson", "text/event-stream"});
+            compression.setMinResponseSize(DataSize.ofKilobytes(2));
+            factory.setCompression(compression);
+            Http2 http2 = new Http2();
+            http2.setEnabled(true);
+            factory.setHttp2(http2);
+            factory.addServerCustomizers(httpServer -> httpServer
+                    .idleTimeout(Duration.ofSeconds(60))
+                    .maxKeepAliveRequests(10000));
+            NettyServerConfig config = new NettyServerConfig();
+            serverLoops = config.serverLoopResources(1, 0);
+            factory.addServerCustomizers(config.nettyServerCustomizer(serverLoops, true, 4096));
+        }
+        server = factory.getWebServer(handler);
+        server.start();
+
+        connections = ConnectionProvider.builder("carga").maxConnections(64).build();
+        client = HttpClient.create(connections)
+                .baseUrl("http://localhost:" + server.getPort())
+                .headers(headers -> headers.set(HttpHeaderNames.ACCEPT_ENCODING, HttpHeaderValues.GZIP));
+        getById();
+        getPagina();
+        dao.verificar();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        connections.dispose();
+        server.stop();
+        if (serverLoops != null) {
+            serverLoops.dispose();
+        }
+    }
+
+    @Benchmark
+    public byte[] getById() {
+        return get("/api/v2/productos/" + id);
+    }
+
+    //Unos 10KB de JSON, por encima del umbral de compresion
+    @Benchmark
+    public byte[] getPagina() {
+        return get("/api/v2/productos?limit=50");
+    }
+
+    private byte[] get(String uri) {
+        return client.get()
+                .uri(uri)
+                .responseSingle((response, body) -> {
+                    if (response.status().code() != 200) {
+                        return body.then(Mono.error(new IllegalStateException(uri + " respondio " + response.status())));
+                    }
+                    return body.asByteArray();
+                })
+                .block();
+    }
+}
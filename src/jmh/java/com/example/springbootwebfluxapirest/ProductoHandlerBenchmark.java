@@ -0,0 +1,70 @@
+package com.example.springbootwebfluxapirest;
+
+import com.example.springbootwebfluxapirest.handler.ProductoHandler;
+import com.example.springbootwebfluxapirest.models.documents.Producto;
+import com.example.springbootwebfluxapirest.models.storage.PhotoKeys;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.springframework.mock.web.reactive.function.server.MockServerRequest;
+import org.springframework.web.reactive.function.server.ServerResponse;
+import reactor.core.publisher.Mono;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class ProductoHandlerBenchmark {
+
+    private static final String FILENAME = "C:\\Users\\cliente\\Mis Fotos\\tv panasonic: frente.jpg";
+
+    private InMemoryProductoDao dao;
+    private ProductoHandler handler;
+    private Producto invalido;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        dao = new InMemoryProductoDao(List.of());
+        handler = BenchmarkFixtures.handler(BenchmarkFixtures.service(dao.dao()));
+        invalido = new Producto("", null);
+        createValido();
+        createInvalido();
+        dao.verificar();
+    }
+
+    //Cada createValido guarda un producto nuevo
+    @Setup(Level.Iteration)
+    public void reset() {
+        dao.reset();
+    }
+
+    @Benchmark
+    public ServerResponse createValido() {
+        //Producto nuevo en cada invocacion, el servicio le asigna id
+        Producto producto = BenchmarkFixtures.producto(0);
+        return handler.create(MockServerRequest.builder().body(Mono.just(producto))).block();
+    }
+
+    @Benchmark
+    public ServerResponse createInvalido() {
+        return handler.create(MockServerRequest.builder().body(Mono.just(invalido))).block();
+    }
+
+    @Benchmark
+    public String sanitizeFilename() {
+        return PhotoKeys.sanitize(FILENAME);
+    }
+
+    //Implementacion anterior de replaceInvalidCharacters, como referencia
+    @Benchmark
+    public String replaceInvalidCharactersRegex() {
+        return FILENAME.replaceAll("[:\\\\ ]", "");
+    }
+}
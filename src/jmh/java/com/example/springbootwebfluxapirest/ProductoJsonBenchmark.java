@@ -0,0 +1,128 @@
+package com.example.springbootwebfluxapirest;
+
+import com.example.springbootwebfluxapirest.models.documents.Categoria;
+import com.example.springbootwebfluxapirest.models.documents.Producto;
+import com.example.springbootwebfluxapirest.models.proto.ProductoListMessage;
+import com.example.springbootwebfluxapirest.models.proto.ProductoMessages;
+import com.example.springbootwebfluxapirest.models.services.ProductoFields;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class ProductoJsonBenchmark {
+
+    private ObjectMapper mapper;
+    private ObjectMapper cborMapper;
+    private ObjectMapper smileMapper;
+    private Producto producto;
+    private List<Producto> pagina;
+    private List<Map<String, Object>> paginaProyectada;
+    private byte[] productoJson;
+    private byte[] categoriaJson;
+    private byte[] paginaJson;
+    private byte[] paginaCbor;
+    private byte[] paginaSmile;
+    private byte[] paginaProtobuf;
+
+    @Setup
+    public void setup() throws IOException {
+        //Misma configuracion base que el ObjectMapper de Spring Boot
+        mapper = Jackson2ObjectMapperBuilder.json().build();
+        producto = BenchmarkFixtures.productos(1).get(0);
+        pagina = BenchmarkFixtures.productos(100);
+        ProductoFields fields = ProductoFields.parse("nombre,precio");
+        paginaProyectada = pagina.stream().map(fields::vista).toList();
+        productoJson = mapper.writeValueAsBytes(producto);
+        categoriaJson = mapper.writeValueAsBytes(producto.getCategoria());
+        //Los mismos mappers que registra CodecsConfig
+        cborMapper = Jackson2ObjectMapperBuilder.json().factory(new CBORFactory())
+                .featuresToEnable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS).build();
+        smileMapper = Jackson2ObjectMapperBuilder.json().factory(new SmileFactory())
+                .featuresToEnable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS).build();
+        paginaJson = mapper.writeValueAsBytes(pagina);
+        paginaCbor = cborMapper.writeValueAsBytes(pagina);
+        paginaSmile = smileMapper.writeValueAsBytes(pagina);
+        paginaProtobuf = ProductoMessages.toMessage(pagina).toByteArray();
+    }
+
+    @Benchmark
+    public byte[] serializeProducto() throws IOException {
+        return mapper.writeValueAsBytes(producto);
+    }
+
+    @Benchmark
+    public byte[] serializePagina() throws IOException {
+        return mapper.writeValueAsBytes(pagina);
+    }
+
+    //Misma pagina con fields=nombre,precio
+    @Benchmark
+    public byte[] serializePaginaProyectada() throws IOException {
+        return mapper.writeValueAsBytes(paginaProyectada);
+    }
+
+    @Benchmark
+    public byte[] serializePaginaCbor() throws IOException {
+        return cborMapper.writeValueAsBytes(pagina);
+    }
+
+    @Benchmark
+    public byte[] serializePaginaSmile() throws IOException {
+        return smileMapper.writeValueAsBytes(pagina);
+    }
+
+    //Incluye la conversion del documento al mensaje, como en la respuesta
+    @Benchmark
+    public byte[] serializePaginaProtobuf() {
+        return ProductoMessages.toMessage(pagina).toByteArray();
+    }
+
+    @Benchmark
+    public Producto[] deserializePagina() throws IOException {
+        return mapper.readValue(paginaJson, Producto[].class);
+    }
+
+    @Benchmark
+    public Producto[] deserializePaginaCbor() throws IOException {
+        return cborMapper.readValue(paginaCbor, Producto[].class);
+    }
+
+    @Benchmark
+    public Producto[] deserializePaginaSmile() throws IOException {
+        return smileMapper.readValue(paginaSmile, Producto[].class);
+    }
+
+    @Benchmark
+    public List<Producto> deserializePaginaProtobuf() throws IOException {
+        return ProductoListMessage.parseFrom(paginaProtobuf).getProductosList().stream()
+                .map(ProductoMessages::fromMessage)
+                .toList();
+    }
+
+    @Benchmark
+    public Producto deserializeProducto() throws IOException {
+        return mapper.readValue(productoJson, Producto.class);
+    }
+
+    @Benchmark
+    public Categoria deserializeCategoria() throws IOException {
+        return mapper.readValue(categoriaJson, Categoria.class);
+    }
+}
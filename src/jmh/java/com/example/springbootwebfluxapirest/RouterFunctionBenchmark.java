@@ -0,0 +1,99 @@
+package com.example.springbootwebfluxapirest;
+
+import com.example.springbootwebfluxapirest.models.documents.Producto;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.reactive.server.WebTestClient;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+//Recorre las rutas de RouterFunctionConfig de punta a punta sobre el ProductoDao en memoria
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class RouterFunctionBenchmark {
+
+    private InMemoryProductoDao dao;
+    private WebTestClient client;
+    private String id;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        List<Producto> productos = BenchmarkFixtures.productos(1000);
+        id = productos.get(500).getId();
+        dao = new InMemoryProductoDao(productos);
+        client = WebTestClient
+                .bindToRouterFunction(new RouterFunctionConfig()
+                        .routes(BenchmarkFixtures.handler(BenchmarkFixtures.service(dao.dao())), "no-cache", "no-cache"))
+                .build();
+        //Cada ruta una vez antes de medir, asi falta de implementacion en el dao corta aqui
+        getById();
+        getByIdNoModificado();
+        getPagina();
+        getPaginaNoModificada();
+        create();
+        dao.verificar();
+    }
+
+    //create agrega un producto por llamada, sin esto la pagina y el mapa crecen durante toda la corrida
+    @Setup(Level.Iteration)
+    public void reset() {
+        dao.reset();
+    }
+
+    @Benchmark
+    public byte[] getById() {
+        return client.get().uri("/api/v2/productos/{id}", id)
+                .accept(MediaType.APPLICATION_JSON)
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody().returnResult().getResponseBody();
+    }
+
+    @Benchmark
+    public byte[] getByIdNoModificado() {
+        return client.get().uri("/api/v2/productos/{id}", id)
+                .accept(MediaType.APPLICATION_JSON)
+                .ifNoneMatch("\"0\"")
+                .exchange()
+                .expectStatus().isNotModified()
+                .expectBody().returnResult().getResponseBody();
+    }
+
+    @Benchmark
+    public byte[] getPaginaNoModificada() {
+        return client.get().uri("/api/v2/productos?limit=50")
+                .accept(MediaType.APPLICATION_JSON)
+                .ifNoneMatch("\"" + BenchmarkFixtures.VERSION_COLECCION.current() + "\"")
+                .exchange()
+                .expectStatus().isNotModified()
+                .expectBody().returnResult().getResponseBody();
+    }
+
+    @Benchmark
+    public byte[] getPagina() {
+        return client.get().uri("/api/v2/productos?limit=50")
+                .accept(MediaType.APPLICATION_JSON)
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody().returnResult().getResponseBody();
+    }
+
+    @Benchmark
+    public byte[] create() {
+        return client.post().uri("/api/v2/productos")
+                .contentType(MediaType.APPLICATION_JSON)
+                .bodyValue(BenchmarkFixtures.producto(0))
+                .exchange()
+                .expectStatus().isCreated()
+                .expectBody().returnResult().getResponseBody();
+    }
+}
@@ -0,0 +1,24 @@
+package com.example.springbootwebfluxapirest;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.annotation.Profile;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+//Corrida de entrenamiento para el archivo CDS: arranca el contexto completo y sale.
+//La JVM vuelca las clases cargadas al salir (ver la tarea cdsArchive de Gradle).
+@Component
+@Profile("cds-training")
+public class CdsTraining {
+
+    private static final Logger log = LoggerFactory.getLogger(CdsTraining.class);
+
+    @EventListener
+    public void onReady(ApplicationReadyEvent event) {
+        log.info("Contexto listo, terminando la corrida de entrenamiento CDS");
+        System.exit(SpringApplication.exit(event.getApplicationContext()));
+    }
+}
@@ -0,0 +1,40 @@
+package com.example.springbootwebfluxapirest;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.boot.web.codec.CodecCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.codec.cbor.Jackson2CborDecoder;
+import org.springframework.http.codec.cbor.Jackson2CborEncoder;
+import org.springframework.http.codec.json.Jackson2SmileDecoder;
+import org.springframework.http.codec.json.Jackson2SmileEncoder;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+//Formatos binarios para los clientes internos. JSON sigue primero, con Accept */* no cambia nada.
+//Protobuf no necesita configuracion, Spring registra su codec al encontrar protobuf-java.
+@Configuration
+public class CodecsConfig {
+
+    @Bean
+    public CodecCustomizer binaryCodecsCustomizer(ObjectProvider<Jackson2ObjectMapperBuilder> builders) {
+        //Misma configuracion que el ObjectMapper de JSON, pero las fechas van como numero
+        ObjectMapper cbor = builders.getObject()
+                .factory(new CBORFactory())
+                .featuresToEnable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS)
+                .build();
+        ObjectMapper smile = builders.getObject()
+                .factory(new SmileFactory())
+                .featuresToEnable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS)
+                .build();
+        return configurer -> {
+            configurer.customCodecs().register(new Jackson2CborEncoder(cbor));
+            configurer.customCodecs().register(new Jackson2CborDecoder(cbor));
+            configurer.defaultCodecs().jackson2SmileEncoder(new Jackson2SmileEncoder(smile));
+            configurer.defaultCodecs().jackson2SmileDecoder(new Jackson2SmileDecoder(smile));
+        };
+    }
+}
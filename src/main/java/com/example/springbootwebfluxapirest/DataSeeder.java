@@ -0,0 +1,119 @@
+package com.example.springbootwebfluxapirest;
+
+import com.example.springbootwebfluxapirest.models.documents.Categoria;
+import com.example.springbootwebfluxapirest.models.documents.Producto;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.context.annotation.Profile;
+import org.springframework.core.io.Resource;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.time.Duration;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+//Carga el catalogo de ejemplo desde un archivo, solo con el perfil seed.
+//Si ya hay productos no toca nada, asi un reinicio no borra ni duplica datos.
+@Component
+@Profile("seed")
+public class DataSeeder implements ApplicationRunner {
+
+    private static final Logger log = LoggerFactory.getLogger(DataSeeder.class);
+
+    record Catalogo(List<String> categorias, List<ProductoSeed> productos) {
+    }
+
+    record ProductoSeed(String nombre, Double precio, String categoria) {
+    }
+
+    private final ReactiveMongoTemplate mongoTemplate;
+    private final ObjectMapper objectMapper;
+    private final Resource location;
+    private final int batchSize;
+    private final boolean reset;
+    private final Duration timeout;
+
+    public DataSeeder(ReactiveMongoTemplate mongoTemplate, ObjectMapper objectMapper,
+                      @Value("${config.seed.location}") Resource location,
+                      @Value("${config.seed.batch-size}") int batchSize,
+                      @Value("${config.seed.reset}") boolean reset,
+                      @Value("${config.seed.timeout}") Duration timeout) {
+        this.mongoTemplate = mongoTemplate;
+        this.objectMapper = objectMapper;
+        this.location = location;
+        this.batchSize = batchSize;
+        this.reset = reset;
+        this.timeout = timeout;
+    }
+
+    //Los ApplicationRunner corren antes de que la aplicacion se marque como lista,
+    //el bloqueo mantiene el readiness en REFUSING_TRAFFIC hasta terminar la carga
+    @Override
+    public void run(ApplicationArguments args) throws IOException {
+        Catalogo catalogo;
+        try (InputStream in = location.getInputStream()) {
+            catalogo = objectMapper.readValue(in, Catalogo.class);
+        }
+        Long insertados = seed(catalogo).block(timeout);
+        log.info("Carga inicial: " + insertados + " productos insertados desde " + location.getDescription());
+    }
+
+    private Mono<Long> seed(Catalogo catalogo) {
+        Mono<Void> limpiar = reset
+                ? mongoTemplate.dropCollection(Producto.class).then(mongoTemplate.dropCollection(Categoria.class))
+                : Mono.empty();
+        return limpiar.then(mongoTemplate.exists(new Query(), Producto.class))
+                .flatMap(existen -> {
+                    if (existen) {
+                        log.info("La coleccion de productos ya tiene datos, no se carga el catalogo");
+                        return Mono.just(0L);
+                    }
+                    return categorias(catalogo.categorias())
+                            .flatMap(porNombre -> insertar(catalogo.productos(), porNombre));
+                });
+    }
+
+    //Reutiliza las categorias que ya existan por nombre y agrega las que falten en un solo insert
+    private Mono<Map<String, Categoria>> categorias(List<String> nombres) {
+        return mongoTemplate.findAll(Categoria.class)
+                .collectMap(Categoria::getNombre, c -> c, HashMap::new)
+                .flatMap(existentes -> Flux.fromIterable(nombres)
+                        .distinct()
+                        .filter(nombre -> !existentes.containsKey(nombre))
+                        .map(Categoria::new)
+                        .collectList()
+                        .flatMapMany(nuevas -> nuevas.isEmpty() ? Flux.empty() : mongoTemplate.insertAll(nuevas))
+                        .doOnNext(c -> existentes.put(c.getNombre(), c))
+                        .then(Mono.just(existentes)));
+    }
+
+    private Mono<Long> insertar(List<ProductoSeed> productos, Map<String, Categoria> categorias) {
+        Date ahora = new Date();
+        return Flux.fromIterable(productos)
+                .map(seed -> {
+                    Categoria categoria = categorias.get(seed.categoria());
+                    if (categoria == null) {
+                        throw new IllegalStateException("Categoria desconocida en el catalogo: " + seed.categoria());
+                    }
+                    Producto producto = new Producto(seed.nombre(), seed.precio(), categoria);
+                    producto.setCreateAt(ahora);
+                    producto.setUpdateAt(ahora);
+                    return producto;
+                })
+                .buffer(batchSize)
+                .concatMap(lote -> mongoTemplate.insertAll(lote).count())
+                .reduce(0L, Long::sum);
+    }
+}
@@ -0,0 +1,31 @@
+package com.example.springbootwebfluxapirest;
+
+import com.example.springbootwebfluxapirest.models.dao.MongoClientProperties;
+import org.springframework.boot.autoconfigure.mongo.MongoClientSettingsBuilderCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.util.concurrent.TimeUnit;
+
+//Pool, sockets y seleccion de servidor del cliente de Mongo desde config.mongo.*.
+//Spring Boot aplica primero spring.data.mongodb.uri, lo que se fija aqui la reemplaza.
+@Configuration
+public class MongoClientConfig {
+
+    @Bean
+    public MongoClientSettingsBuilderCustomizer mongoClientSettingsCustomizer(MongoClientProperties properties) {
+        MongoClientProperties.Pool pool = properties.getPool();
+        return builder -> builder
+                .applyToConnectionPoolSettings(settings -> settings
+                        .maxSize(pool.getMaxSize())
+                        .minSize(pool.getMinSize())
+                        .maxWaitTime(pool.getMaxWaitTime().toMillis(), TimeUnit.MILLISECONDS)
+                        .maxConnectionIdleTime(pool.getMaxConnectionIdleTime().toMillis(), TimeUnit.MILLISECONDS)
+                        .maxConnecting(pool.getMaxConnecting()))
+                .applyToSocketSettings(settings -> settings
+                        .connectTimeout((int) properties.getConnectTimeout().toMillis(), TimeUnit.MILLISECONDS)
+                        .readTimeout((int) properties.getSocketTimeout().toMillis(), TimeUnit.MILLISECONDS))
+                .applyToClusterSettings(settings -> settings
+                        .serverSelectionTimeout(properties.getServerSelectionTimeout().toMillis(), TimeUnit.MILLISECONDS));
+    }
+}
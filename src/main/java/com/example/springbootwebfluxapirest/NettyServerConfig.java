@@ -0,0 +1,45 @@
+package com.example.springbootwebfluxapirest;
+
+import io.netty.channel.ChannelOption;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.web.embedded.netty.NettyServerCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import reactor.netty.resources.LoopResources;
+
+//Hilos y opciones de socket del servidor Netty. Compresion, HTTP/2 y tiempos de conexion
+//van con las propiedades server.* de Spring Boot, ver application-prod.properties.
+@Configuration
+public class NettyServerConfig {
+
+    private static final Logger log = LoggerFactory.getLogger(NettyServerConfig.class);
+
+    //Propios del servidor: los clientes (WebClient, Mongo) no comparten los event loops de las peticiones.
+    //Con 0 se usa el valor por defecto de Reactor Netty: un worker por nucleo que tambien acepta conexiones.
+    @Bean(destroyMethod = "dispose")
+    public LoopResources serverLoopResources(@Value("${config.server.netty.selector-threads}") int selectorThreads,
+                                             @Value("${config.server.netty.worker-threads}") int workerThreads) {
+        int workers = workerThreads > 0 ? workerThreads : LoopResources.DEFAULT_IO_WORKER_COUNT;
+        if (selectorThreads > 0) {
+            return LoopResources.create("productos-http", selectorThreads, workers, true);
+        }
+        return LoopResources.create("productos-http", workers, true);
+    }
+
+    @Bean
+    public NettyServerCustomizer nettyServerCustomizer(LoopResources serverLoopResources,
+                                                       @Value("${config.server.netty.native}") boolean preferNative,
+                                                       @Value("${config.server.netty.backlog}") int backlog) {
+        //epoll solo si la libreria nativa cargo, si no Reactor Netty sigue con NIO
+        log.info("Transporte del servidor: " + (preferNative && LoopResources.hasNativeSupport() ? "nativo" : "NIO"));
+        return server -> {
+            server = server.runOn(serverLoopResources, preferNative)
+                    .childOption(ChannelOption.SO_KEEPALIVE, true)
+                    .childOption(ChannelOption.TCP_NODELAY, true);
+            //Con 0 queda el del sistema operativo (somaxconn)
+            return backlog > 0 ? server.option(ChannelOption.SO_BACKLOG, backlog) : server;
+        };
+    }
+}
@@ -1,9 +1,19 @@
 package com.example.springbootwebfluxapirest;
 
+import com.example.springbootwebfluxapirest.handler.ProductoCodecs;
 import com.example.springbootwebfluxapirest.handler.ProductoHandler;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.HttpStatusCode;
+import org.springframework.http.MediaType;
+import org.springframework.http.server.reactive.ServerHttpResponse;
 import org.springframework.web.reactive.function.server.*;
+import reactor.core.publisher.Mono;
+
+import java.util.Arrays;
 
 import static org.springframework.web.reactive.function.server.RequestPredicates.*;
 import static org.springframework.web.reactive.function.server.RouterFunctions.route;
@@ -13,13 +23,58 @@ import static org.springframework.web.reactive.function.server.RouterFunctions.r
 public class RouterFunctionConfig {
 
     @Bean
-    public RouterFunction<ServerResponse> routes(ProductoHandler handler) {
-        return route(GET("/api/v2/productos").or(GET("/api/v3/productos")), handler::getAll)
-                .andRoute(GET("/api/v2/productos/{id}"), handler::getById)
+    public RouterFunction<ServerResponse> routes(ProductoHandler handler,
+                                                 @Value("${config.productos.cache-control.list}") String listCacheControl,
+                                                 @Value("${config.productos.cache-control.item}") String itemCacheControl) {
+        return route(GET("/api/v2/productos").and(queryParam("ids", ids -> true)), handler::getByIds)
+                .andRoute(GET("/api/v2/productos").and(acceptsOnly(MediaType.APPLICATION_NDJSON,
+                        ProductoCodecs.SMILE_STREAM, ProductoCodecs.PROTOBUF_DELIMITED)), handler::stream)
+                .andRoute(GET("/api/v2/productos").and(acceptsOnly(MediaType.TEXT_EVENT_STREAM)), handler::streamEvents)
+                .and(route(GET("/api/v2/productos").or(GET("/api/v3/productos")), handler::getAll)
+                        .filter(cacheControl(listCacheControl)))
+                .andRoute(GET("/api/v2/productos/cache/stats"), handler::cacheStats)
+                .andRoute(GET("/api/v2/productos/stats/categorias"), handler::statsCategorias)
+                .andRoute(GET("/api/v2/productos/stats/precios"), handler::statsPrecios)
+                .andRoute(GET("/api/v2/productos/stats/altas"), handler::statsAltas)
+                .andRoute(GET("/api/v2/productos/search"), handler::search)
+                .andRoute(GET("/api/v2/productos/changes"), handler::changes)
+                .andRoute(GET("/api/v2/productos/operaciones/{id}"), handler::operacion)
+                .andRoute(HEAD("/api/v2/productos/{id}"), handler::exists)
+                .and(route(GET("/api/v2/productos/{id}"), handler::getById)
+                        .filter(cacheControl(itemCacheControl)))
+                .andRoute(GET("/api/v2/productos/{id}/foto"), handler::getFoto)
                 .andRoute(POST("/api/v2/productos"), handler::create)
+                .andRoute(POST("/api/v2/productos/bulk"), handler::bulk)
+                .andRoute(POST("/api/v2/productos/bulk/delete"), handler::deleteByIds)
                 .andRoute(PUT("/api/v2/productos/{id}"), handler::edit)
+                .andRoute(DELETE("/api/v2/productos"), handler::deleteAll)
                 .andRoute(DELETE("/api/v2/productos/{id}"), handler::delete)
                 .andRoute(POST("/api/v2/productos/upload/{id}"),handler::upload)
                 .andRoute(POST("/api/v2/productosWithPhoto"), handler::createWithPhoto);
     }
+
+    //accept() tambien acepta */*, por eso se exige el tipo exacto para las variantes en streaming.
+    //Los parametros cuentan: application/x-protobuf sin delimited=true es la pagina, no el stream.
+    private static RequestPredicate acceptsOnly(MediaType... mediaTypes) {
+        return headers(headers -> headers.accept().stream()
+                .anyMatch(aceptado -> Arrays.stream(mediaTypes).anyMatch(mediaType -> mediaType.equalsTypeAndSubtype(aceptado)
+                        && mediaType.getParameters().entrySet().stream()
+                        .allMatch(p -> p.getValue().equalsIgnoreCase(aceptado.getParameter(p.getKey()))))));
+    }
+
+    //Solo para 200 y 304, un 404 o un 400 no debe quedar en la cache del cliente
+    private static HandlerFilterFunction<ServerResponse, ServerResponse> cacheControl(String value) {
+        return (request, next) -> {
+            ServerHttpResponse response = request.exchange().getResponse();
+            response.beforeCommit(() -> {
+                HttpStatusCode status = response.getStatusCode();
+                boolean cacheable = status == null || status.isSameCodeAs(HttpStatus.OK) || status.isSameCodeAs(HttpStatus.NOT_MODIFIED);
+                if (cacheable && !response.getHeaders().containsKey(HttpHeaders.CACHE_CONTROL)) {
+                    response.getHeaders().setCacheControl(value);
+                }
+                return Mono.empty();
+            });
+            return next.handle(request);
+        };
+    }
 }
@@ -1,19 +1,31 @@
 package com.example.springbootwebfluxapirest.controllers;
 
+import com.example.springbootwebfluxapirest.handler.ProductoCodecs;
+import com.example.springbootwebfluxapirest.handler.ProductoETags;
+import com.example.springbootwebfluxapirest.handler.ProductoHandler;
 import com.example.springbootwebfluxapirest.models.documents.Producto;
+import com.example.springbootwebfluxapirest.models.journal.WriteBehindService;
+import com.example.springbootwebfluxapirest.models.proto.ProductoMessage;
+import com.example.springbootwebfluxapirest.models.proto.ProductoMessages;
+import com.example.springbootwebfluxapirest.models.services.ProductoFields;
 import com.example.springbootwebfluxapirest.models.services.ProductoService;
 import jakarta.validation.Valid;
+import org.bson.types.ObjectId;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.http.codec.ServerSentEvent;
 import org.springframework.http.codec.multipart.FilePart;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.bind.support.WebExchangeBindException;
+import org.springframework.web.server.ResponseStatusException;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
-import java.io.File;
 import java.net.URI;
 import java.time.LocalDate;
 import java.util.*;
@@ -22,38 +34,90 @@ import java.util.*;
 @RequestMapping("/api/productos")
 public class ProductoController {
 
-    @Value("${config.uploads.path}")
-    private String path;
+    @Value("${config.productos.page.default-limit}")
+    private int defaultLimit;
+
+    @Value("${config.productos.page.max-limit}")
+    private int maxLimit;
+
     private final ProductoService service;
 
-    public ProductoController(ProductoService service) {
+    //Solo con config.productos.write-behind.enabled
+    private final WriteBehindService writeBehind;
+
+    public ProductoController(ProductoService service, ObjectProvider<WriteBehindService> writeBehind) {
         this.service = service;
+        this.writeBehind = writeBehind.getIfAvailable();
     }
 
     @PostMapping("/upload/{id}")
     public Mono<ResponseEntity<Producto>> uploadPhoto(@PathVariable String id, @RequestPart FilePart file) {
-        return service.findById(id).flatMap(p -> {
-                    p.setFoto(UUID.randomUUID()+ "-" + replaceInvalidCharacters(file.filename()));
-                    return file.transferTo(new File(path + p.getFoto()))
-                            .then(service.save(p));
-                }).map(p -> ResponseEntity.ok().body(p))
+        return service.findById(id)
+                .flatMap(p -> service.saveWithPhoto(p, file.filename(), file.content()))
+                .map(p -> ResponseEntity.ok().body(p))
                 .defaultIfEmpty(ResponseEntity.notFound().build());
     }
 
-    private String replaceInvalidCharacters(String string) {
-        return string.replaceAll("[:\\\\ ]", "");
+    //El formato se elige igual que en las rutas funcionales, JSON salvo que el Accept pida otro
+    @GetMapping
+    public Mono<ResponseEntity<Object>> getAll(@RequestParam(required = false) String after,
+                                               @RequestParam(required = false) Integer limit,
+                                               @RequestHeader HttpHeaders headers) {
+        if (after != null && !ObjectId.isValid(after)) {
+            return Mono.just(ResponseEntity.badRequest().build());
+        }
+        MediaType tipo = ProductoCodecs.negotiate(headers);
+        if (tipo == null) {
+            return Mono.just(ResponseEntity.status(HttpStatus.NOT_ACCEPTABLE).build());
+        }
+        int pageSize = limit == null ? defaultLimit : Math.min(Math.max(limit, 1), maxLimit);
+        return service.findAllAfter(after, pageSize + 1, ProductoFields.ALL)
+                .collectList()
+                .map(list -> {
+                    ResponseEntity.BodyBuilder response = ResponseEntity.ok()
+                            .varyBy(HttpHeaders.ACCEPT)
+                            .contentType(tipo);
+                    if (list.size() > pageSize) {
+                        list = list.subList(0, pageSize);
+                        response.header(ProductoHandler.NEXT_CURSOR_HEADER, list.get(pageSize - 1).getId());
+                    }
+                    return response.body(ProductoCodecs.cuerpo(tipo, list));
+                });
     }
 
-    @GetMapping
-    public Mono<ResponseEntity<Flux<Producto>>> getAll() {
-        return Mono.just(ResponseEntity.ok()
-                .contentType(MediaType.APPLICATION_JSON)
-                .body(service.findAll()));
+    @GetMapping(value = "/stream", produces = {MediaType.APPLICATION_NDJSON_VALUE, "application/stream+x-jackson-smile"})
+    public Flux<Producto> stream(@RequestParam(required = false) String after) {
+        if (after != null && !ObjectId.isValid(after)) {
+            return Flux.error(new ResponseStatusException(HttpStatus.BAD_REQUEST));
+        }
+        return service.streamAll(after, ProductoFields.ALL);
+    }
+
+    //El codec de Protobuf escribe un Flux como mensajes delimitados por su largo
+    @GetMapping(value = "/stream", produces = MediaType.APPLICATION_PROTOBUF_VALUE)
+    public Flux<ProductoMessage> streamProtobuf(@RequestParam(required = false) String after) {
+        return stream(after).map(ProductoMessages::toMessage);
+    }
+
+    @GetMapping(value = "/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public Flux<ServerSentEvent<Producto>> streamEvents(@RequestHeader(value = "Last-Event-ID", required = false) String after) {
+        if (after != null && !ObjectId.isValid(after)) {
+            return Flux.error(new ResponseStatusException(HttpStatus.BAD_REQUEST));
+        }
+        return service.streamAll(after, ProductoFields.ALL).map(p -> ServerSentEvent.builder(p).id(p.getId()).build());
     }
 
     @GetMapping("{id}")
-    public Mono<ResponseEntity<Producto>> getProduct(@PathVariable String id) {
-        return service.findById(id).map(ResponseEntity::ok)
+    public Mono<ResponseEntity<Object>> getProduct(@PathVariable String id, @RequestHeader HttpHeaders headers) {
+        MediaType tipo = ProductoCodecs.negotiate(headers);
+        if (tipo == null) {
+            return Mono.just(ResponseEntity.status(HttpStatus.NOT_ACCEPTABLE).build());
+        }
+        return service.findById(id).map(p -> ResponseEntity.ok()
+                        .headers(h -> ProductoETags.set(h, p, tipo))
+                        .varyBy(HttpHeaders.ACCEPT)
+                        .contentType(tipo)
+                        .body(ProductoCodecs.cuerpo(tipo, p)))
                 .defaultIfEmpty(ResponseEntity.notFound().build());
     }
 
@@ -64,6 +128,19 @@ public class ProductoController {
             if (producto.getCreateAt() == null) {
                 producto.setCreateAt(new Date());
             }
+            producto.setVersion(null);
+            if (writeBehind != null) {
+                return writeBehind.submit(producto).map(operacion -> {
+                    response.put("Operacion", operacion);
+                    response.put("Mensaje", "Producto aceptado, se guarda en segundo plano");
+                    response.put("Timestamp", LocalDate.now());
+                    return ResponseEntity
+                            .accepted()
+                            .location(URI.create("/api/v2/productos/operaciones/" + operacion.getId()))
+                            .contentType(MediaType.APPLICATION_JSON)
+                            .body(response);
+                });
+            }
             return service.save(producto).map(p -> {
                 response.put("Producto", p);
                 response.put("Mensaje", "Producto creado con exito");
@@ -90,9 +167,8 @@ public class ProductoController {
         if (producto.getCreateAt() == null) {
             producto.setCreateAt(new Date());
         }
-        producto.setFoto(UUID.randomUUID() + "-" + replaceInvalidCharacters(file.filename()));
-        return file.transferTo(new File(path + producto.getFoto()))
-                .then(service.save(producto))
+        producto.setVersion(null);
+        return service.saveWithPhoto(producto, file.filename(), file.content())
                 .map(p -> ResponseEntity
                         .created(URI.create("api/productos/".concat(p.getId())))
                         .contentType(MediaType.APPLICATION_JSON)
@@ -100,21 +176,26 @@ public class ProductoController {
     }
 
     @PutMapping("{id}")
-    public Mono<ResponseEntity<Producto>> updateProduct(@RequestBody @Valid Producto product, @PathVariable String id) {
-        return service.findById(id).flatMap(p -> {
-                    p.setNombre(product.getNombre());
-                    p.setPrecio(product.getPrecio());
-                    p.setCategoria(product.getCategoria());
-                    return service.save(p);
-                })
+    public Mono<ResponseEntity<Producto>> updateProduct(@RequestBody @Valid Producto product, @PathVariable String id,
+                                                        @RequestHeader HttpHeaders headers) {
+        return service.update(id, product, ProductoETags.expectedVersion(headers))
                 .map(p -> ResponseEntity.created(URI.create("/api/productos/".concat(id)))
+                        .headers(h -> ProductoETags.set(h, p))
                         .body(p))
-                .defaultIfEmpty(ResponseEntity.notFound().build());
+                .defaultIfEmpty(ResponseEntity.notFound().build())
+                .onErrorResume(OptimisticLockingFailureException.class,
+                        e -> Mono.just(ResponseEntity.status(HttpStatus.PRECONDITION_FAILED).build()));
     }
 
     @DeleteMapping("{id}")
     public Mono<ResponseEntity<Void>> deleteProduct(@PathVariable String id) {
-        return service.findById(id).flatMap(p -> service.delete(p).then(Mono.just(new ResponseEntity<Void>(HttpStatus.NO_CONTENT))))
-                .defaultIfEmpty(new ResponseEntity<>(HttpStatus.NOT_FOUND));
+        return service.deleteById(id)
+                .map(deleted -> new ResponseEntity<Void>(deleted ? HttpStatus.NO_CONTENT : HttpStatus.NOT_FOUND));
+    }
+
+    @RequestMapping(path = "{id}", method = RequestMethod.HEAD)
+    public Mono<ResponseEntity<Void>> existsProduct(@PathVariable String id) {
+        return service.existsById(id)
+                .map(exists -> new ResponseEntity<Void>(exists ? HttpStatus.OK : HttpStatus.NOT_FOUND));
     }
 }
@@ -0,0 +1,78 @@
+package com.example.springbootwebfluxapirest.filters;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.LongSupplier;
+
+//Limite de peticiones en curso con AIMD: mientras la latencia se mantiene cerca de la de referencia
+//sube de a una peticion por ventana, cuando la supera o hay errores baja en forma multiplicativa.
+class AdaptiveConcurrencyLimit {
+
+    //Peso de cada muestra en la latencia de referencia, cambia despacio a proposito
+    private static final double ALPHA = 0.05;
+
+    private final int minLimit;
+    private final int maxLimit;
+    private final double tolerance;
+    private final double backoff;
+    private final LongSupplier clock;
+    private final AtomicInteger inFlight = new AtomicInteger();
+
+    private volatile double limit;
+    private double referenceRtt;
+    private long lastDecrease;
+
+    AdaptiveConcurrencyLimit(int initialLimit, int minLimit, int maxLimit, double tolerance, double backoff,
+                             LongSupplier clock) {
+        this.limit = initialLimit;
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.tolerance = tolerance;
+        this.backoff = backoff;
+        this.clock = clock;
+    }
+
+    boolean tryAcquire() {
+        while (true) {
+            int current = inFlight.get();
+            if (current >= (int) limit) {
+                return false;
+            }
+            if (inFlight.compareAndSet(current, current + 1)) {
+                return true;
+            }
+        }
+    }
+
+    //Las peticiones canceladas por el cliente liberan su lugar sin aportar muestra
+    void release() {
+        inFlight.decrementAndGet();
+    }
+
+    void release(long rttNanos, boolean success) {
+        inFlight.decrementAndGet();
+        synchronized (this) {
+            if (referenceRtt == 0) {
+                referenceRtt = rttNanos;
+            }
+            if (!success || rttNanos > referenceRtt * tolerance) {
+                //Una sola baja por ventana, si no una rafaga de respuestas lentas lo lleva al minimo
+                long now = clock.getAsLong();
+                if (now - lastDecrease > referenceRtt) {
+                    limit = Math.max(minLimit, limit * backoff);
+                    lastDecrease = now;
+                }
+            } else {
+                limit = Math.min(maxLimit, limit + 1 / limit);
+            }
+            referenceRtt = referenceRtt * (1 - ALPHA) + rttNanos * ALPHA;
+        }
+    }
+
+    int getLimit() {
+        return (int) limit;
+    }
+
+    int getInFlight() {
+        return inFlight.get();
+    }
+}
@@ -0,0 +1,161 @@
+package com.example.springbootwebfluxapirest.filters;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.example.springbootwebfluxapirest.handler.ProductoCodecs;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.ApplicationContext;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.HttpStatusCode;
+import org.springframework.http.MediaType;
+import org.springframework.http.server.reactive.ServerHttpRequest;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ServerWebExchange;
+import org.springframework.web.server.WebFilter;
+import org.springframework.web.server.WebFilterChain;
+import org.springframework.web.util.pattern.PathPattern;
+import org.springframework.web.util.pattern.PathPatternParser;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.SignalType;
+
+import java.net.InetSocketAddress;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+//Corta las peticiones de mas antes de que lleguen a Mongo: 429 cuando un cliente supera el limite
+//de su ruta y 503 cuando el servidor ya tiene todas las peticiones en curso que puede atender.
+//Corre antes del ruteo, cubre tanto RouterFunctionConfig como ProductoController.
+@Component
+@Order(Ordered.HIGHEST_PRECEDENCE + 10)
+public class RateLimitFilter implements WebFilter {
+
+    //Los paths que no son de ninguna ruta comparten una sola cubeta por cliente
+    private static final String OTRA = "otra";
+
+    private final RateLimitProperties properties;
+    private final AdaptiveConcurrencyLimit concurrencyLimit;
+    private final MeterRegistry registry;
+    private final List<PathPattern> streams;
+    private final Cache<String, TokenBucket> buckets;
+
+    //Las rutas se leen en la primera peticion, cuando los mappings ya estan armados
+    private final Supplier<List<PathPattern>> routeSource;
+    private volatile List<PathPattern> routes;
+
+    @Autowired
+    public RateLimitFilter(RateLimitProperties properties, MeterRegistry registry, ApplicationContext context) {
+        this(properties, registry, () -> RoutePatterns.collect(context));
+    }
+
+    RateLimitFilter(RateLimitProperties properties, MeterRegistry registry, Supplier<List<PathPattern>> routeSource) {
+        this.properties = properties;
+        this.registry = registry;
+        this.routeSource = routeSource;
+        this.streams = properties.getStreams().stream().map(PathPatternParser.defaultInstance::parse).toList();
+        //Se descartan las cubetas de los clientes que dejan de llamar
+        this.buckets = Caffeine.newBuilder()
+                .maximumSize(properties.getMaxBuckets())
+                .expireAfterAccess(Duration.ofMinutes(10))
+                .build();
+        RateLimitProperties.Concurrency concurrency = properties.getConcurrency();
+        this.concurrencyLimit = new AdaptiveConcurrencyLimit(concurrency.getInitialLimit(), concurrency.getMinLimit(),
+                concurrency.getMaxLimit(), concurrency.getTolerance(), concurrency.getBackoff(), System::nanoTime);
+        Gauge.builder("productos.ratelimit.limit", concurrencyLimit, AdaptiveConcurrencyLimit::getLimit)
+                .description("Limite adaptativo de peticiones en curso")
+                .register(registry);
+        Gauge.builder("productos.ratelimit.inflight", concurrencyLimit, AdaptiveConcurrencyLimit::getInFlight)
+                .register(registry);
+    }
+
+    @Override
+    public Mono<Void> filter(ServerWebExchange exchange, WebFilterChain chain) {
+        ServerHttpRequest request = exchange.getRequest();
+        String path = request.getPath().pathWithinApplication().value();
+        if (!properties.isEnabled() || path.startsWith("/actuator")) {
+            return chain.filter(exchange);
+        }
+        String route = request.getMethod().name() + " " + route(request);
+        long wait = bucket(client(request), route).tryAcquire();
+        if (wait > 0) {
+            return reject(exchange, HttpStatus.TOO_MANY_REQUESTS, Duration.ofNanos(wait));
+        }
+        //Los streams quedan abiertos mucho tiempo, no ocupan lugar ni cuentan como latencia
+        if (isStream(request)) {
+            return chain.filter(exchange);
+        }
+        if (!concurrencyLimit.tryAcquire()) {
+            return reject(exchange, HttpStatus.SERVICE_UNAVAILABLE, properties.getConcurrency().getRetryAfter());
+        }
+        long start = System.nanoTime();
+        return chain.filter(exchange).doFinally(signal -> {
+            if (signal == SignalType.CANCEL) {
+                concurrencyLimit.release();
+            } else {
+                HttpStatusCode status = exchange.getResponse().getStatusCode();
+                boolean success = signal == SignalType.ON_COMPLETE && (status == null || !status.is5xxServerError());
+                concurrencyLimit.release(System.nanoTime() - start, success);
+            }
+        });
+    }
+
+    //El patron de la ruta y no el path: los ids no crean cubetas nuevas
+    private String route(ServerHttpRequest request) {
+        List<PathPattern> patterns = routes;
+        if (patterns == null) {
+            patterns = routeSource.get();
+            routes = patterns;
+        }
+        for (PathPattern pattern : patterns) {
+            if (pattern.matches(request.getPath().pathWithinApplication())) {
+                return pattern.getPatternString();
+            }
+        }
+        return OTRA;
+    }
+
+    private TokenBucket bucket(String client, String route) {
+        return buckets.get(client + " " + route, key -> {
+            double requestsPerSecond = properties.getRequestsPerSecond();
+            int burst = properties.getBurst();
+            for (RateLimitProperties.Route limit : properties.getRoutes()) {
+                if (route.equals(limit.getMethod() + " " + limit.getPath())) {
+                    requestsPerSecond = limit.getRequestsPerSecond();
+                    burst = limit.getBurst();
+                }
+            }
+            return new TokenBucket(burst, requestsPerSecond, System::nanoTime);
+        });
+    }
+
+    //Detras de un proxy la direccion real llega con server.forward-headers-strategy
+    private static String client(ServerHttpRequest request) {
+        InetSocketAddress address = request.getRemoteAddress();
+        return address == null ? "desconocido" : address.getHostString();
+    }
+
+    //Por la ruta si siempre es un stream, por el Accept si la ruta tambien tiene una variante paginada
+    private boolean isStream(ServerHttpRequest request) {
+        if (streams.stream().anyMatch(pattern -> pattern.matches(request.getPath().pathWithinApplication()))) {
+            return true;
+        }
+        return request.getHeaders().getAccept().stream().anyMatch(type ->
+                MediaType.TEXT_EVENT_STREAM.equalsTypeAndSubtype(type) || MediaType.APPLICATION_NDJSON.equalsTypeAndSubtype(type)
+                        || ProductoCodecs.SMILE_STREAM.equalsTypeAndSubtype(type)
+                        || (ProductoCodecs.PROTOBUF_DELIMITED.equalsTypeAndSubtype(type) && "true".equals(type.getParameter("delimited"))));
+    }
+
+    private Mono<Void> reject(ServerWebExchange exchange, HttpStatus status, Duration retryAfter) {
+        registry.counter("productos.ratelimit.rejected", "status", String.valueOf(status.value())).increment();
+        exchange.getResponse().setStatusCode(status);
+        long seconds = Math.max(1, TimeUnit.NANOSECONDS.toSeconds(retryAfter.toNanos() + 999_999_999));
+        exchange.getResponse().getHeaders().set(HttpHeaders.RETRY_AFTER, String.valueOf(seconds));
+        return exchange.getResponse().setComplete();
+    }
+}
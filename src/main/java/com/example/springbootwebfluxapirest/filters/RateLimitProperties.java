@@ -0,0 +1,67 @@
+package com.example.springbootwebfluxapirest.filters;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+//Propiedades config.ratelimit.*, las rutas se declaran como lista indexada en application.properties
+@Getter
+@Setter
+@Component
+@ConfigurationProperties(prefix = "config.ratelimit")
+public class RateLimitProperties {
+
+    private boolean enabled = true;
+
+    //Limite por cliente y ruta cuando la ruta no tiene uno propio
+    private double requestsPerSecond = 50;
+
+    private int burst = 100;
+
+    //Cubetas en memoria, una por cliente y ruta
+    private long maxBuckets = 100_000;
+
+    private List<Route> routes = new ArrayList<>();
+
+    //Rutas que siempre responden en streaming: quedan abiertas mucho tiempo, no pasan por el limite de concurrencia
+    private List<String> streams = new ArrayList<>(List.of("/api/v2/productos/changes", "/api/productos/stream"));
+
+    private Concurrency concurrency = new Concurrency();
+
+    @Getter
+    @Setter
+    public static class Route {
+
+        private String method;
+
+        //El patron como esta declarado en la ruta, por ejemplo /api/v2/productos/{id}
+        private String path;
+
+        private double requestsPerSecond;
+
+        private int burst;
+    }
+
+    @Getter
+    @Setter
+    public static class Concurrency {
+
+        private int initialLimit = 20;
+
+        private int minLimit = 4;
+
+        private int maxLimit = 200;
+
+        //Una respuesta mas lenta que tolerance veces la latencia de referencia baja el limite
+        private double tolerance = 2.0;
+
+        private double backoff = 0.9;
+
+        private Duration retryAfter = Duration.ofSeconds(1);
+    }
+}
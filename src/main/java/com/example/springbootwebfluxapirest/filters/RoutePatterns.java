@@ -0,0 +1,141 @@
+package com.example.springbootwebfluxapirest.filters;
+
+import org.springframework.context.ApplicationContext;
+import org.springframework.core.io.Resource;
+import org.springframework.http.HttpMethod;
+import org.springframework.web.reactive.function.server.HandlerFunction;
+import org.springframework.web.reactive.function.server.RequestPredicate;
+import org.springframework.web.reactive.function.server.RequestPredicates;
+import org.springframework.web.reactive.function.server.RouterFunction;
+import org.springframework.web.reactive.function.server.RouterFunctions;
+import org.springframework.web.reactive.function.server.ServerRequest;
+import org.springframework.web.reactive.result.method.RequestMappingInfoHandlerMapping;
+import org.springframework.web.util.pattern.PathPattern;
+import org.springframework.web.util.pattern.PathPatternParser;
+import reactor.core.publisher.Mono;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+
+//Patrones de las rutas de la aplicacion: los de las RouterFunction y los de los @RequestMapping.
+//Ordenados del mas especifico al mas general, el primero que coincide es la ruta de la peticion.
+final class RoutePatterns {
+
+    private RoutePatterns() {
+    }
+
+    @SuppressWarnings("rawtypes")
+    static List<PathPattern> collect(ApplicationContext context) {
+        Set<String> paths = new LinkedHashSet<>();
+        context.getBeanProvider(RouterFunction.class).orderedStream().forEach(router -> visit(router, paths));
+        Set<PathPattern> patterns = new LinkedHashSet<>();
+        paths.forEach(path -> patterns.add(PathPatternParser.defaultInstance.parse(path)));
+        context.getBeansOfType(RequestMappingInfoHandlerMapping.class).values()
+                .forEach(mapping -> mapping.getHandlerMethods().keySet()
+                        .forEach(info -> patterns.addAll(info.getPatternsCondition().getPatterns())));
+        return patterns.stream().sorted(PathPattern.SPECIFICITY_COMPARATOR).toList();
+    }
+
+    private static void visit(RouterFunction<?> router, Set<String> paths) {
+        Deque<String> prefijos = new ArrayDeque<>();
+        prefijos.push("");
+        router.accept(new RouterFunctions.Visitor() {
+            @Override
+            public void startNested(RequestPredicate predicate) {
+                Set<String> nested = new LinkedHashSet<>();
+                predicate.accept(new PathCollector(nested));
+                prefijos.push(prefijos.peek() + (nested.isEmpty() ? "" : nested.iterator().next()));
+            }
+
+            @Override
+            public void endNested(RequestPredicate predicate) {
+                prefijos.pop();
+            }
+
+            @Override
+            public void route(RequestPredicate predicate, HandlerFunction<?> handlerFunction) {
+                Set<String> route = new LinkedHashSet<>();
+                predicate.accept(new PathCollector(route));
+                route.forEach(path -> paths.add(prefijos.peek() + path));
+            }
+
+            @Override
+            public void resources(Function<ServerRequest, Mono<Resource>> lookupFunction) {
+            }
+
+            @Override
+            public void attributes(Map<String, Object> attributes) {
+            }
+
+            @Override
+            public void unknown(RouterFunction<?> routerFunction) {
+            }
+        });
+    }
+
+    //Junta los path(...) de un predicado, con or() pueden ser varios
+    private record PathCollector(Set<String> paths) implements RequestPredicates.Visitor {
+
+        @Override
+        public void method(Set<HttpMethod> methods) {
+        }
+
+        @Override
+        public void path(String pattern) {
+            paths.add(pattern);
+        }
+
+        @Override
+        public void pathExtension(String extension) {
+        }
+
+        @Override
+        public void header(String name, String value) {
+        }
+
+        @Override
+        public void queryParam(String name, String value) {
+        }
+
+        @Override
+        public void startAnd() {
+        }
+
+        @Override
+        public void and() {
+        }
+
+        @Override
+        public void endAnd() {
+        }
+
+        @Override
+        public void startOr() {
+        }
+
+        @Override
+        public void or() {
+        }
+
+        @Override
+        public void endOr() {
+        }
+
+        @Override
+        public void startNegate() {
+        }
+
+        @Override
+        public void endNegate() {
+        }
+
+        @Override
+        public void unknown(RequestPredicate predicate) {
+        }
+    }
+}
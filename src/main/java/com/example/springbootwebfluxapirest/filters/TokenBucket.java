@@ -0,0 +1,34 @@
+package com.example.springbootwebfluxapirest.filters;
+
+import java.util.function.LongSupplier;
+
+//Admite rafagas de hasta capacity peticiones y se rellena a razon de refillPerSecond
+class TokenBucket {
+
+    private final double capacity;
+    private final double refillPerNano;
+    private final LongSupplier clock;
+
+    private double tokens;
+    private long last;
+
+    TokenBucket(double capacity, double refillPerSecond, LongSupplier clock) {
+        this.capacity = capacity;
+        this.refillPerNano = refillPerSecond / 1_000_000_000d;
+        this.clock = clock;
+        this.tokens = capacity;
+        this.last = clock.getAsLong();
+    }
+
+    //0 si se obtuvo un token, si no los nanosegundos que faltan para el siguiente
+    synchronized long tryAcquire() {
+        long now = clock.getAsLong();
+        tokens = Math.min(capacity, tokens + (now - last) * refillPerNano);
+        last = now;
+        if (tokens >= 1) {
+            tokens -= 1;
+            return 0;
+        }
+        return (long) Math.ceil((1 - tokens) / refillPerNano);
+    }
+}
@@ -0,0 +1,148 @@
+package com.example.springbootwebfluxapirest.handler;
+
+import com.example.springbootwebfluxapirest.models.documents.Producto;
+import com.example.springbootwebfluxapirest.models.proto.ProductoMessage;
+import com.example.springbootwebfluxapirest.models.proto.ProductoMessages;
+import com.example.springbootwebfluxapirest.models.services.ProductoFields;
+import org.springframework.core.ParameterizedTypeReference;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.ReactiveHttpOutputMessage;
+import org.springframework.web.reactive.function.BodyInserter;
+import org.springframework.web.reactive.function.BodyInserters;
+import org.springframework.web.reactive.function.server.ServerRequest;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+
+//Negociacion de formato para las rutas de productos: JSON, CBOR, Smile y Protobuf.
+//JSON va primero en cada lista, asi Accept */* o sin Accept responde igual que siempre.
+public final class ProductoCodecs {
+
+    public static final MediaType SMILE = new MediaType("application", "x-jackson-smile");
+
+    public static final MediaType SMILE_STREAM = new MediaType("application", "stream+x-jackson-smile");
+
+    //Mensajes precedidos por su largo (writeDelimitedTo), el tipo que usa el codec de Spring para Flux
+    public static final MediaType PROTOBUF_DELIMITED = new MediaType("application", "x-protobuf", Map.of("delimited", "true"));
+
+    private static final List<MediaType> VALORES = List.of(MediaType.APPLICATION_JSON, MediaType.APPLICATION_CBOR,
+            SMILE, MediaType.APPLICATION_PROTOBUF);
+
+    private static final List<MediaType> STREAMING = List.of(MediaType.APPLICATION_NDJSON, SMILE_STREAM, PROTOBUF_DELIMITED);
+
+    private ProductoCodecs() {
+    }
+
+    //Null si no se puede producir ninguno de los tipos aceptados
+    public static MediaType negotiate(ServerRequest request) {
+        return negotiate(request.headers().accept(), VALORES);
+    }
+
+    public static MediaType negotiate(HttpHeaders headers) {
+        return negotiate(headers.getAccept(), VALORES);
+    }
+
+    public static MediaType negotiateStream(ServerRequest request) {
+        return negotiate(request.headers().accept(), STREAMING);
+    }
+
+    static MediaType negotiate(List<MediaType> accept, List<MediaType> producibles) {
+        if (accept.isEmpty()) {
+            return producibles.get(0);
+        }
+        List<MediaType> ordenados = new ArrayList<>(accept);
+        ordenados.sort(Comparator.comparingDouble(MediaType::getQualityValue).reversed());
+        for (MediaType aceptado : ordenados) {
+            if (aceptado.getQualityValue() == 0) {
+                continue;
+            }
+            for (MediaType producible : producibles) {
+                if (aceptado.isCompatibleWith(producible)) {
+                    return producible;
+                }
+            }
+        }
+        return null;
+    }
+
+    public static BodyInserter<?, ReactiveHttpOutputMessage> producto(MediaType tipo, Producto producto) {
+        return BodyInserters.fromValue(cuerpo(tipo, producto));
+    }
+
+    public static BodyInserter<?, ReactiveHttpOutputMessage> productos(MediaType tipo, List<Producto> productos) {
+        return BodyInserters.fromValue(cuerpo(tipo, productos));
+    }
+
+    //Con fields= solo viajan los campos pedidos. Protobuf ya omite los campos vacios, le basta la copia.
+    public static BodyInserter<?, ReactiveHttpOutputMessage> producto(MediaType tipo, Producto producto, ProductoFields fields) {
+        if (fields.isAll() || esProtobuf(tipo)) {
+            return producto(tipo, fields.copy(producto));
+        }
+        return BodyInserters.fromValue(fields.vista(producto));
+    }
+
+    public static BodyInserter<?, ReactiveHttpOutputMessage> productos(MediaType tipo, List<Producto> productos, ProductoFields fields) {
+        if (fields.isAll()) {
+            return productos(tipo, productos);
+        }
+        if (esProtobuf(tipo)) {
+            return productos(tipo, productos.stream().map(fields::copy).toList());
+        }
+        return BodyInserters.fromValue(productos.stream().map(fields::vista).toList());
+    }
+
+    //Protobuf no serializa el documento directamente, se pasa por el mensaje generado
+    public static Object cuerpo(MediaType tipo, Producto producto) {
+        return esProtobuf(tipo) ? ProductoMessages.toMessage(producto) : producto;
+    }
+
+    public static Object cuerpo(MediaType tipo, List<Producto> productos) {
+        return esProtobuf(tipo) ? ProductoMessages.toMessage(productos) : productos;
+    }
+
+    public static BodyInserter<?, ReactiveHttpOutputMessage> stream(MediaType tipo, Flux<Producto> productos) {
+        if (esProtobuf(tipo)) {
+            return BodyInserters.fromPublisher(productos.map(ProductoMessages::toMessage), ProductoMessage.class);
+        }
+        return BodyInserters.fromPublisher(productos, Producto.class);
+    }
+
+    public static BodyInserter<?, ReactiveHttpOutputMessage> stream(MediaType tipo, Flux<Producto> productos, ProductoFields fields) {
+        if (fields.isAll() || esProtobuf(tipo)) {
+            return stream(tipo, productos);
+        }
+        return BodyInserters.fromPublisher(productos.map(fields::vista), new ParameterizedTypeReference<Map<String, Object>>() {});
+    }
+
+    public static Mono<Producto> bodyToMono(ServerRequest request) {
+        if (esProtobuf(contentType(request))) {
+            return request.bodyToMono(ProductoMessage.class).map(ProductoMessages::fromMessage);
+        }
+        return request.bodyToMono(Producto.class);
+    }
+
+    //El codec de CBOR no decodifica secuencias, el lote llega como un arreglo
+    public static Flux<Producto> bodyToFlux(ServerRequest request) {
+        MediaType tipo = contentType(request);
+        if (esProtobuf(tipo)) {
+            return request.bodyToFlux(ProductoMessage.class).map(ProductoMessages::fromMessage);
+        }
+        if (MediaType.APPLICATION_CBOR.equalsTypeAndSubtype(tipo)) {
+            return request.bodyToMono(new ParameterizedTypeReference<List<Producto>>() {}).flatMapIterable(lista -> lista);
+        }
+        return request.bodyToFlux(Producto.class);
+    }
+
+    private static MediaType contentType(ServerRequest request) {
+        return request.headers().contentType().orElse(MediaType.APPLICATION_JSON);
+    }
+
+    private static boolean esProtobuf(MediaType tipo) {
+        return MediaType.APPLICATION_PROTOBUF.equalsTypeAndSubtype(tipo);
+    }
+}
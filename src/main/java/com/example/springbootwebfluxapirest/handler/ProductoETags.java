@@ -0,0 +1,79 @@
+package com.example.springbootwebfluxapirest.handler;
+
+import com.example.springbootwebfluxapirest.models.documents.Producto;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+
+import java.util.List;
+import java.util.Map;
+
+//ETag de un producto a partir de su version, lo usan el handler y el controller.
+//Cada formato es una representacion distinta: fuera de JSON el ETag lleva el formato, "3-cbor",
+//para que una cache no entregue el CBOR guardado a quien revalida pidiendo Smile.
+public final class ProductoETags {
+
+    private static final Map<String, String> SUFIJOS = Map.of(
+            MediaType.APPLICATION_CBOR.getSubtype(), "cbor",
+            ProductoCodecs.SMILE.getSubtype(), "smile",
+            MediaType.APPLICATION_PROTOBUF.getSubtype(), "protobuf");
+
+    //Ninguna version guardada es negativa, un If-Match con este valor siempre termina en 412
+    private static final long NO_MATCH = -1L;
+
+    private ProductoETags() {
+    }
+
+    //null si el producto todavia no tiene version
+    public static String of(Producto producto, MediaType tipo) {
+        return producto.getVersion() == null ? null : of(String.valueOf(producto.getVersion()), tipo);
+    }
+
+    //Tambien para la version de la coleccion en los listados
+    public static String of(String version, MediaType tipo) {
+        String sufijo = SUFIJOS.get(tipo.getSubtype());
+        return "\"" + version + (sufijo == null ? "" : "-" + sufijo) + "\"";
+    }
+
+    public static void set(HttpHeaders headers, Producto producto) {
+        set(headers, producto, MediaType.APPLICATION_JSON);
+    }
+
+    public static void set(HttpHeaders headers, Producto producto, MediaType tipo) {
+        String etag = of(producto, tipo);
+        if (etag != null) {
+            headers.setETag(etag);
+        }
+    }
+
+    //null si la peticion no trae If-Match o trae *, en ese caso la edicion no se condiciona.
+    //If-Match compara en forma fuerte, un ETag debil o ajeno nunca coincide. El formato no
+    //importa, todas las representaciones de una version describen el mismo producto.
+    public static Long expectedVersion(HttpHeaders headers) {
+        List<String> ifMatch;
+        try {
+            ifMatch = headers.getIfMatch();
+        } catch (IllegalArgumentException e) {
+            return NO_MATCH;
+        }
+        if (ifMatch.isEmpty() || ifMatch.contains("*")) {
+            return null;
+        }
+        String etag = ifMatch.get(0);
+        if (etag.startsWith("W/") || etag.length() < 3) {
+            return NO_MATCH;
+        }
+        String valor = etag.substring(1, etag.length() - 1);
+        int guion = valor.indexOf('-');
+        if (guion > 0) {
+            if (!SUFIJOS.containsValue(valor.substring(guion + 1))) {
+                return NO_MATCH;
+            }
+            valor = valor.substring(0, guion);
+        }
+        try {
+            return Long.parseLong(valor);
+        } catch (NumberFormatException e) {
+            return NO_MATCH;
+        }
+    }
+}
@@ -2,12 +2,34 @@ package com.example.springbootwebfluxapirest.handler;
 
 import com.example.springbootwebfluxapirest.models.documents.Categoria;
 import com.example.springbootwebfluxapirest.models.documents.Producto;
+import com.example.springbootwebfluxapirest.models.journal.WriteBehindService;
+import com.example.springbootwebfluxapirest.models.services.BulkItemError;
+import com.example.springbootwebfluxapirest.models.services.BulkResult;
+import com.example.springbootwebfluxapirest.models.services.PeriodoStats;
+import com.example.springbootwebfluxapirest.models.services.PrecioBucket;
+import com.example.springbootwebfluxapirest.models.services.ProductoCache;
+import com.example.springbootwebfluxapirest.models.services.ProductoChange;
+import com.example.springbootwebfluxapirest.models.services.ProductoChangeFeed;
+import com.example.springbootwebfluxapirest.models.services.ProductoSearch;
+import com.example.springbootwebfluxapirest.models.services.ProductoFields;
 import com.example.springbootwebfluxapirest.models.services.ProductoService;
+import com.example.springbootwebfluxapirest.models.services.ProductoStats;
+import com.example.springbootwebfluxapirest.models.storage.PhotoStorage;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import org.bson.types.ObjectId;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.ParameterizedTypeReference;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.data.domain.Sort;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
+import org.springframework.http.codec.ServerSentEvent;
 import org.springframework.http.codec.multipart.FilePart;
 import org.springframework.http.codec.multipart.FormFieldPart;
+import org.springframework.http.codec.multipart.Part;
 import org.springframework.stereotype.Component;
 import org.springframework.validation.BeanPropertyBindingResult;
 import org.springframework.validation.Errors;
@@ -17,19 +39,52 @@ import org.springframework.web.reactive.function.server.ServerRequest;
 import org.springframework.web.reactive.function.server.ServerResponse;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
+import reactor.util.function.Tuple2;
 
-import java.io.File;
 import java.net.URI;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
 import java.util.Date;
-import java.util.UUID;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
 
 import static org.springframework.web.reactive.function.BodyInserters.fromValue;
 
 @Component
 public class ProductoHandler {
 
-    @Value("${config.uploads.path}")
-    private String pathname;
+    public static final String NEXT_CURSOR_HEADER = "X-Next-Cursor";
+
+    private static final Set<String> SORTABLE_FIELDS = Set.of("nombre", "precio", "createAt");
+
+    @Value("${config.productos.page.default-limit}")
+    private int defaultLimit;
+
+    @Value("${config.productos.page.max-limit}")
+    private int maxLimit;
+
+    @Value("${config.productos.bulk.window-size}")
+    private int bulkWindowSize;
+
+    @Value("${config.productos.bulk.concurrency}")
+    private int bulkConcurrency;
+
+    @Value("${config.photos.cache-max-age}")
+    private Duration photoMaxAge;
+
+    @Value("${config.productos.changes.overflow}")
+    private String changesOverflow;
+
+    @Value("${config.productos.stats.buckets}")
+    private int statsBuckets;
 
     @Autowired
     private ProductoService service;
@@ -37,37 +92,354 @@ public class ProductoHandler {
     @Autowired
     private Validator validator;
 
+    @Autowired
+    private ProductoCache cache;
+
+    @Autowired
+    private PhotoStorage photoStorage;
+
+    @Autowired
+    private ProductoChangeFeed changeFeed;
+
+    @Autowired
+    private ProductoStats stats;
+
+    //Solo con config.productos.write-behind.enabled
+    @Autowired(required = false)
+    private WriteBehindService writeBehind;
+
     public Mono<ServerResponse> upload(ServerRequest request) {
         String id = request.pathVariable("id");
         return request.multipartData()
                 .map(multipart -> multipart.toSingleValueMap().get("file"))
                 .cast(FilePart.class)
                 .flatMap(file -> service.findById(id)
-                        .flatMap(p -> {
-                            p.setFoto(UUID.randomUUID() + "-" + replaceInvalidCharacters(file.filename()));
-                            return file.transferTo(new File(pathname + p.getFoto()))
-                                    .then(service.save(p))
-                                    .flatMap(product -> ServerResponse.ok().body(fromValue(product)))
-                                    .switchIfEmpty(ServerResponse.notFound().build());
-                        }));
+                        .flatMap(p -> service.saveWithPhoto(p, file.filename(), file.content()))
+                        .flatMap(product -> ServerResponse.ok().body(fromValue(product)))
+                        .switchIfEmpty(ServerResponse.notFound().build()));
+    }
+
+    public Mono<ServerResponse> getFoto(ServerRequest request) {
+        String id = request.pathVariable("id");
+        Integer width;
+        try {
+            width = request.queryParam("width").map(Integer::valueOf).orElse(null);
+        } catch (NumberFormatException e) {
+            return ServerResponse.badRequest().build();
+        }
+        return service.findById(id)
+                .filter(p -> p.getFoto() != null)
+                .flatMap(p -> {
+                    String key = selectVariant(p, width);
+                    return photoStorage.load(key).flatMap(foto -> {
+                        //El hash es del original, las miniaturas y las fotos antiguas usan tamaño y fecha
+                        String etag = key.equals(p.getFoto()) && p.getFotoHash() != null ? "\"" + p.getFotoHash() + "\""
+                                : "W/\"" + foto.getSize() + "-" + foto.getLastModified().toEpochMilli() + "\"";
+                        return request.checkNotModified(foto.getLastModified(), etag)
+                                .switchIfEmpty(Mono.defer(() -> ServerResponse.ok()
+                                        .eTag(etag)
+                                        .lastModified(foto.getLastModified())
+                                        .cacheControl(CacheControl.maxAge(photoMaxAge).cachePublic())
+                                        .body(BodyInserters.fromResource(foto.getResource()))));
+                    });
+                })
+                .switchIfEmpty(ServerResponse.notFound().build());
+    }
+
+    //La miniatura mas pequeña que cubra el ancho pedido, o la foto original
+    private String selectVariant(Producto p, Integer width) {
+        if (width == null || p.getThumbnails() == null) {
+            return p.getFoto();
+        }
+        return p.getThumbnails().entrySet().stream()
+                .filter(e -> Integer.parseInt(e.getKey()) >= width)
+                .min(Comparator.comparingInt(e -> Integer.parseInt(e.getKey())))
+                .map(Map.Entry::getValue)
+                .orElse(p.getFoto());
     }
 
     public Mono<ServerResponse> getAll(ServerRequest request) {
+        String after = request.queryParam("after").orElse(null);
+        Integer limit = parseLimit(request.queryParam("limit").orElse(null));
+        if (limit == null || (after != null && !ObjectId.isValid(after))) {
+            return ServerResponse.badRequest().build();
+        }
+        ProductoFields fields;
+        try {
+            fields = ProductoFields.parse(request.queryParam("fields").orElse(null));
+        } catch (IllegalArgumentException e) {
+            return ServerResponse.badRequest().body(fromValue(e.getMessage()));
+        }
+        MediaType tipo = ProductoCodecs.negotiate(request);
+        if (tipo == null) {
+            return notAcceptable();
+        }
+        //La version se lee antes que la pagina, asi el ETag nunca es mas nuevo que el contenido
+        return service.collectionVersion().flatMap(version -> {
+            String etag = ProductoETags.of(version, tipo);
+            return notModified(request, etag)
+                    //Se pide un elemento de mas para saber si existe una pagina siguiente
+                    .switchIfEmpty(Mono.defer(() -> service.findAllAfter(after, limit + 1, fields)
+                            .collectList()
+                            .flatMap(list -> {
+                                ServerResponse.BodyBuilder response = ServerResponse.ok()
+                                        .eTag(etag)
+                                        .varyBy(HttpHeaders.ACCEPT)
+                                        .contentType(tipo);
+                                if (list.size() > limit) {
+                                    list = list.subList(0, limit);
+                                    response.header(NEXT_CURSOR_HEADER, list.get(limit - 1).getId());
+                                }
+                                return response.body(ProductoCodecs.productos(tipo, list, fields));
+                            })));
+        });
+    }
+
+    public Mono<ServerResponse> stream(ServerRequest request) {
+        String after = request.queryParam("after").orElse(null);
+        if (after != null && !ObjectId.isValid(after)) {
+            return ServerResponse.badRequest().build();
+        }
+        ProductoFields fields;
+        try {
+            fields = ProductoFields.parse(request.queryParam("fields").orElse(null));
+        } catch (IllegalArgumentException e) {
+            return ServerResponse.badRequest().body(fromValue(e.getMessage()));
+        }
+        MediaType tipo = ProductoCodecs.negotiateStream(request);
+        if (tipo == null) {
+            return notAcceptable();
+        }
+        return ServerResponse.ok()
+                .varyBy(HttpHeaders.ACCEPT)
+                .contentType(tipo)
+                .body(ProductoCodecs.stream(tipo, service.streamAll(after, fields), fields));
+    }
+
+    public Mono<ServerResponse> streamEvents(ServerRequest request) {
+        //Un cliente SSE que se reconecta envia el ultimo id recibido
+        String after = request.headers().firstHeader("Last-Event-ID");
+        if (after != null && !ObjectId.isValid(after)) {
+            return ServerResponse.badRequest().build();
+        }
+        ProductoFields fields;
+        try {
+            fields = ProductoFields.parse(request.queryParam("fields").orElse(null));
+        } catch (IllegalArgumentException e) {
+            return ServerResponse.badRequest().body(fromValue(e.getMessage()));
+        }
+        Flux<ServerSentEvent<Object>> events = service.streamAll(after, fields)
+                .map(p -> ServerSentEvent.<Object>builder(fields.isAll() ? p : fields.vista(p)).id(p.getId()).build());
         return ServerResponse.ok()
+                .contentType(MediaType.TEXT_EVENT_STREAM)
+                .body(events, new ParameterizedTypeReference<ServerSentEvent<Object>>() {});
+    }
+
+    public Mono<ServerResponse> changes(ServerRequest request) {
+        String token = request.queryParam("token").orElse(request.headers().firstHeader("Last-Event-ID"));
+        String categoriaId = request.queryParam("categoria").orElse(null);
+        String overflow = request.queryParam("overflow").orElse(changesOverflow);
+        Flux<ProductoChange> changes;
+        try {
+            changes = changeFeed.changes(token, categoriaId);
+        } catch (IllegalArgumentException e) {
+            return ServerResponse.badRequest().body(fromValue(e.getMessage()));
+        }
+        //Cada suscriptor lento pierde cambios en lugar de acumularlos en memoria
+        changes = switch (overflow) {
+            case "drop" -> changes.onBackpressureDrop();
+            case "latest" -> changes.onBackpressureLatest();
+            default -> null;
+        };
+        if (changes == null) {
+            return ServerResponse.badRequest().body(fromValue("overflow debe ser drop o latest"));
+        }
+        Flux<ServerSentEvent<ProductoChange>> events = changes
+                .map(change -> ServerSentEvent.builder(change)
+                        .id(change.getToken())
+                        .event(change.getOperacion().name().toLowerCase())
+                        .build());
+        return ServerResponse.ok()
+                .contentType(MediaType.TEXT_EVENT_STREAM)
+                .body(events, new ParameterizedTypeReference<ServerSentEvent<ProductoChange>>() {});
+    }
+
+    public Mono<ServerResponse> cacheStats(ServerRequest request) {
+        CacheStats stats = cache.stats();
+        Map<String, Object> response = new LinkedHashMap<>();
+        response.put("hits", stats.hitCount());
+        response.put("misses", stats.missCount());
+        response.put("evictions", stats.evictionCount());
+        response.put("size", cache.size());
+        response.put("sharedHits", cache.sharedHits());
+        response.put("sharedMisses", cache.sharedMisses());
+        return ServerResponse.ok().contentType(MediaType.APPLICATION_JSON).body(fromValue(response));
+    }
+
+    public Mono<ServerResponse> statsCategorias(ServerRequest request) {
+        return stats.porCategoria().flatMap(list -> ServerResponse.ok()
+                .contentType(MediaType.APPLICATION_JSON)
+                .body(fromValue(list)));
+    }
+
+    //limites=0,50,100,500 usa esos rangos, si no buckets=10 reparte los precios en rangos parejos
+    public Mono<ServerResponse> statsPrecios(ServerRequest request) {
+        Mono<List<PrecioBucket>> precios;
+        try {
+            List<Double> limites = request.queryParam("limites")
+                    .map(value -> Arrays.stream(value.split(",")).map(String::trim).map(Double::valueOf).toList())
+                    .orElse(List.of());
+            int buckets = request.queryParam("buckets").map(Integer::valueOf).orElse(statsBuckets);
+            precios = stats.precios(limites, buckets);
+        } catch (IllegalArgumentException e) {
+            return ServerResponse.badRequest().body(fromValue(e.getMessage()));
+        }
+        return precios.flatMap(list -> ServerResponse.ok()
                 .contentType(MediaType.APPLICATION_JSON)
-                .body(service.findAll(), Producto.class);
+                .body(fromValue(list)));
+    }
+
+    public Mono<ServerResponse> statsAltas(ServerRequest request) {
+        Mono<List<PeriodoStats>> altas;
+        try {
+            altas = stats.altas(request.queryParam("unidad").orElse("mes"), request.queryParam("categoria").orElse(null));
+        } catch (IllegalArgumentException e) {
+            return ServerResponse.badRequest().body(fromValue(e.getMessage()));
+        }
+        return altas.flatMap(list -> ServerResponse.ok()
+                .contentType(MediaType.APPLICATION_JSON)
+                .body(fromValue(list)));
+    }
+
+    public Mono<ServerResponse> search(ServerRequest request) {
+        ProductoSearch search;
+        Integer limit = parseLimit(request.queryParam("limit").orElse(null));
+        try {
+            search = parseFilters(request);
+            search.setSort(parseSort(request.queryParams().get("sort")));
+            search.setFields(ProductoFields.parse(request.queryParam("fields").orElse(null)));
+        } catch (IllegalArgumentException | DateTimeParseException e) {
+            return ServerResponse.badRequest().body(fromValue(e.getMessage()));
+        }
+        if (limit == null) {
+            return ServerResponse.badRequest().build();
+        }
+        search.setLimit(limit);
+        MediaType tipo = ProductoCodecs.negotiate(request);
+        if (tipo == null) {
+            return notAcceptable();
+        }
+        return service.search(search)
+                .collectList()
+                .flatMap(list -> ServerResponse.ok()
+                        .varyBy(HttpHeaders.ACCEPT)
+                        .contentType(tipo)
+                        .body(ProductoCodecs.productos(tipo, list, search.getFields())));
+    }
+
+    private static ProductoSearch parseFilters(ServerRequest request) {
+        ProductoSearch search = new ProductoSearch();
+        search.setNombre(request.queryParam("nombre").orElse(null));
+        search.setTexto(request.queryParam("texto").orElse(null));
+        search.setPrecioMin(request.queryParam("precioMin").map(Double::valueOf).orElse(null));
+        search.setPrecioMax(request.queryParam("precioMax").map(Double::valueOf).orElse(null));
+        search.setCategoriaId(request.queryParam("categoria").orElse(null));
+        search.setDesde(parseDate(request.queryParam("desde").orElse(null)));
+        search.setHasta(parseDate(request.queryParam("hasta").orElse(null)));
+        return search;
+    }
+
+    //Mismo formato que Producto.createAt
+    private static Date parseDate(String date) {
+        return date == null ? null : Date.from(LocalDate.parse(date).atStartOfDay(ZoneId.systemDefault()).toInstant());
+    }
+
+    //sort=precio,-createAt ordena por precio ascendente y luego por fecha descendente
+    private static Sort parseSort(List<String> values) {
+        if (values == null) {
+            return Sort.unsorted();
+        }
+        List<Sort.Order> orders = new ArrayList<>();
+        for (String value : values) {
+            for (String field : value.split(",")) {
+                boolean desc = field.startsWith("-");
+                String property = desc ? field.substring(1) : field;
+                if (!SORTABLE_FIELDS.contains(property)) {
+                    throw new IllegalArgumentException("No se puede ordenar por " + property);
+                }
+                orders.add(desc ? Sort.Order.desc(property) : Sort.Order.asc(property));
+            }
+        }
+        return Sort.by(orders);
     }
 
     public Mono<ServerResponse> getById(ServerRequest request) {
         String id = request.pathVariable("id");
-        return service.findById(id).flatMap(p -> ServerResponse.ok()
-                        .contentType(MediaType.APPLICATION_JSON)
-                        .body(fromValue(p)))
+        ProductoFields fields;
+        try {
+            fields = ProductoFields.parse(request.queryParam("fields").orElse(null));
+        } catch (IllegalArgumentException e) {
+            return ServerResponse.badRequest().body(fromValue(e.getMessage()));
+        }
+        MediaType tipo = ProductoCodecs.negotiate(request);
+        if (tipo == null) {
+            return notAcceptable();
+        }
+        //Con If-None-Match vigente se responde 304 sin serializar el producto.
+        //El producto sale de la cache completo, la proyeccion se aplica en memoria.
+        return service.findById(id).flatMap(p -> notModified(request, ProductoETags.of(p, tipo))
+                        .switchIfEmpty(Mono.defer(() -> ServerResponse.ok()
+                                .headers(headers -> ProductoETags.set(headers, p, tipo))
+                                .varyBy(HttpHeaders.ACCEPT)
+                                .contentType(tipo)
+                                .body(ProductoCodecs.producto(tipo, p, fields)))))
                 .switchIfEmpty(ServerResponse.notFound().build());
     }
 
+    public Mono<ServerResponse> getByIds(ServerRequest request) {
+        List<String> ids = request.queryParams().getOrDefault("ids", List.of()).stream()
+                .flatMap(valor -> Arrays.stream(valor.split(",")))
+                .map(String::trim)
+                .filter(id -> !id.isEmpty())
+                .distinct()
+                .toList();
+        if (ids.isEmpty() || ids.size() > maxLimit || !ids.stream().allMatch(ObjectId::isValid)) {
+            return ServerResponse.badRequest().build();
+        }
+        ProductoFields fields;
+        try {
+            fields = ProductoFields.parse(request.queryParam("fields").orElse(null));
+        } catch (IllegalArgumentException e) {
+            return ServerResponse.badRequest().body(fromValue(e.getMessage()));
+        }
+        MediaType tipo = ProductoCodecs.negotiate(request);
+        if (tipo == null) {
+            return notAcceptable();
+        }
+        return service.findAllById(ids)
+                .collectList()
+                .flatMap(list -> ServerResponse.ok()
+                        .varyBy(HttpHeaders.ACCEPT)
+                        .contentType(tipo)
+                        .body(ProductoCodecs.productos(tipo, list, fields)));
+    }
+
+    //El 304 repite el Vary del 200, si no una cache compartida lo aplicaria a cualquier formato
+    private static Mono<ServerResponse> notModified(ServerRequest request, String etag) {
+        return etag == null ? Mono.empty() : request.checkNotModified(etag)
+                .flatMap(response -> ServerResponse.from(response).varyBy(HttpHeaders.ACCEPT).build());
+    }
+
+    private static Mono<ServerResponse> notAcceptable() {
+        return ServerResponse.status(HttpStatus.NOT_ACCEPTABLE).build();
+    }
+
     public Mono<ServerResponse> create(ServerRequest request) {
-        Mono<Producto> monoProducto = request.bodyToMono(Producto.class);
+        MediaType tipo = ProductoCodecs.negotiate(request);
+        if (tipo == null) {
+            return notAcceptable();
+        }
+        Mono<Producto> monoProducto = ProductoCodecs.bodyToMono(request);
         return monoProducto.flatMap(p -> {
             Errors errors = new BeanPropertyBindingResult(p, Producto.class.getName());
             validator.validate(p, errors);
@@ -80,61 +452,150 @@ public class ProductoHandler {
                 if (p.getCreateAt() == null) {
                     p.setCreateAt(new Date());
                 }
+                //Con version distinta de null Spring Data lo trataria como una actualizacion
+                p.setVersion(null);
+                if (writeBehind != null) {
+                    return writeBehind.submit(p).flatMap(operacion -> ServerResponse.accepted()
+                            .location(URI.create("/api/v2/productos/operaciones/" + operacion.getId()))
+                            .contentType(MediaType.APPLICATION_JSON)
+                            .body(fromValue(operacion)));
+                }
                 return service.save(p)
                         .flatMap(pdb -> ServerResponse.created(URI.create("/api/v2/productos" + pdb.getId()))
-                                .contentType(MediaType.APPLICATION_JSON)
-                                .body(BodyInserters.fromValue(pdb)));
+                                .headers(headers -> ProductoETags.set(headers, pdb, tipo))
+                                .varyBy(HttpHeaders.ACCEPT)
+                                .contentType(tipo)
+                                .body(ProductoCodecs.producto(tipo, pdb)));
+            }
+        });
+    }
+
+    public Mono<ServerResponse> operacion(ServerRequest request) {
+        if (writeBehind == null) {
+            return ServerResponse.notFound().build();
+        }
+        return writeBehind.estado(request.pathVariable("id"))
+                .flatMap(operacion -> ServerResponse.ok()
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .body(fromValue(operacion)))
+                .switchIfEmpty(ServerResponse.notFound().build());
+    }
+
+    public Mono<ServerResponse> bulk(ServerRequest request) {
+        //Acepta NDJSON, un arreglo JSON, Smile o Protobuf delimitado, se decodifica elemento a elemento
+        return ProductoCodecs.bodyToFlux(request)
+                .index()
+                .buffer(bulkWindowSize)
+                .flatMap(this::saveWindow, bulkConcurrency)
+                .reduce(BulkResult::merge)
+                .defaultIfEmpty(new BulkResult())
+                .flatMap(result -> ServerResponse.ok()
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .body(fromValue(result)));
+    }
+
+    private Mono<BulkResult> saveWindow(List<Tuple2<Long, Producto>> window) {
+        List<BulkItemError> errores = new ArrayList<>();
+        List<Producto> validos = new ArrayList<>();
+        List<Long> indices = new ArrayList<>();
+        for (Tuple2<Long, Producto> item : window) {
+            Producto p = item.getT2();
+            Errors errors = new BeanPropertyBindingResult(p, Producto.class.getName());
+            validator.validate(p, errors);
+            if (errors.hasErrors()) {
+                String mensaje = errors.getFieldErrors().stream()
+                        .map(fieldError -> "El campo " + fieldError.getField() + " " + fieldError.getDefaultMessage())
+                        .collect(Collectors.joining(", "));
+                errores.add(new BulkItemError(item.getT1(), p.getId(), mensaje));
+            } else {
+                validos.add(p);
+                indices.add(item.getT1());
             }
+        }
+        return service.saveAll(validos).map(fallidos -> {
+            //El servicio informa la posicion dentro de la ventana, se traduce a la del lote completo
+            fallidos.forEach(e -> errores.add(new BulkItemError(indices.get((int) e.getIndice()), e.getId(), e.getMensaje())));
+            return new BulkResult(window.size(), errores);
         });
     }
 
     public Mono<ServerResponse> edit(ServerRequest request) {
-        Mono<Producto> monoProducto = request.bodyToMono(Producto.class);
         String id = request.pathVariable("id");
+        Long version = ProductoETags.expectedVersion(request.headers().asHttpHeaders());
+        MediaType tipo = ProductoCodecs.negotiate(request);
+        if (tipo == null) {
+            return notAcceptable();
+        }
 
-        return service.findById(id).zipWith(monoProducto, (pDB, pReq) -> {
-                    pDB.setNombre(pReq.getNombre());
-                    pDB.setPrecio(pReq.getPrecio());
-                    pDB.setCategoria(pReq.getCategoria());
-                    return pDB;
-                }).flatMap(p -> ServerResponse.created(URI.create("/api/v2/productos" + p.getId()))
-                        .contentType(MediaType.APPLICATION_JSON)
-                        .body(service.save(p), Producto.class))
-                .switchIfEmpty(ServerResponse.notFound().build());
+        return ProductoCodecs.bodyToMono(request)
+                .flatMap(cambios -> service.update(id, cambios, version))
+                .flatMap(p -> ServerResponse.created(URI.create("/api/v2/productos/" + p.getId()))
+                        .headers(headers -> ProductoETags.set(headers, p, tipo))
+                        .varyBy(HttpHeaders.ACCEPT)
+                        .contentType(tipo)
+                        .body(ProductoCodecs.producto(tipo, p)))
+                .switchIfEmpty(ServerResponse.notFound().build())
+                .onErrorResume(OptimisticLockingFailureException.class,
+                        e -> ServerResponse.status(HttpStatus.PRECONDITION_FAILED).build());
     }
 
     public Mono<ServerResponse> delete(ServerRequest request) {
         String id = request.pathVariable("id");
-        return service.findById(id)
-                .flatMap(p -> service.delete(p).then(ServerResponse.noContent().build()))
-                .switchIfEmpty(ServerResponse.notFound().build());
+        return service.deleteById(id)
+                .flatMap(deleted -> deleted ? ServerResponse.noContent().build() : ServerResponse.notFound().build());
+    }
+
+    public Mono<ServerResponse> exists(ServerRequest request) {
+        String id = request.pathVariable("id");
+        return service.existsById(id)
+                .flatMap(exists -> exists ? ServerResponse.ok().build() : ServerResponse.notFound().build());
+    }
+
+    public Mono<ServerResponse> deleteByIds(ServerRequest request) {
+        return request.bodyToMono(new ParameterizedTypeReference<List<String>>() {})
+                .flatMap(service::deleteAll)
+                .flatMap(eliminados -> ServerResponse.ok().body(fromValue(Map.of("eliminados", eliminados))));
+    }
+
+    public Mono<ServerResponse> deleteAll(ServerRequest request) {
+        ProductoSearch filtro;
+        try {
+            filtro = parseFilters(request);
+        } catch (IllegalArgumentException | DateTimeParseException e) {
+            return ServerResponse.badRequest().body(fromValue(e.getMessage()));
+        }
+        //Sin filtros se borraria el catalogo completo
+        if (!filtro.hasFilters()) {
+            return ServerResponse.badRequest().body(fromValue("Se requiere al menos un filtro"));
+        }
+        return service.deleteAll(filtro)
+                .flatMap(eliminados -> ServerResponse.ok().body(fromValue(Map.of("eliminados", eliminados))));
     }
 
     public Mono<ServerResponse> createWithPhoto(ServerRequest request) {
-        Mono<Producto> producto = request.multipartData().map(multipart -> {
-            FormFieldPart nombre = (FormFieldPart) multipart.toSingleValueMap().get("nombre");
-            FormFieldPart precio = (FormFieldPart) multipart.toSingleValueMap().get("precio");
-            FormFieldPart categoriaId = (FormFieldPart) multipart.toSingleValueMap().get("categoria.id");
-            FormFieldPart categoriaNombre = (FormFieldPart) multipart.toSingleValueMap().get("categoria.nombre");
+        return request.multipartData().flatMap(multipart -> {
+            Map<String, Part> parts = multipart.toSingleValueMap();
+            FormFieldPart nombre = (FormFieldPart) parts.get("nombre");
+            FormFieldPart precio = (FormFieldPart) parts.get("precio");
+            FormFieldPart categoriaId = (FormFieldPart) parts.get("categoria.id");
+            FormFieldPart categoriaNombre = (FormFieldPart) parts.get("categoria.nombre");
+            FilePart file = (FilePart) parts.get("file");
             Categoria categoria = new Categoria(categoriaNombre.value());
             categoria.setId(categoriaId.value());
-            return new Producto(nombre.value(),Double.parseDouble(precio.value()), categoria);
-        });
-
-        return request.multipartData()
-                .map(multipart -> multipart.toSingleValueMap().get("file"))
-                .cast(FilePart.class)
-                .flatMap(file -> producto
-                        .flatMap(p -> {
-                            p.setFoto(UUID.randomUUID() + "-" + replaceInvalidCharacters(file.filename()));
-                            return file.transferTo(new File(pathname + p.getFoto()))
-                                    .then(service.save(p))
-                                    .flatMap(product -> ServerResponse.ok().body(fromValue(product)));
-                        }));
+            Producto producto = new Producto(nombre.value(), Double.parseDouble(precio.value()), categoria);
+            return service.saveWithPhoto(producto, file.filename(), file.content());
+        }).flatMap(product -> ServerResponse.ok().body(fromValue(product)));
     }
 
-    private String replaceInvalidCharacters(String string) {
-        return string.replaceAll("[:\\\\ ]", "");
+    private Integer parseLimit(String limit) {
+        if (limit == null) {
+            return defaultLimit;
+        }
+        try {
+            return Math.min(Math.max(Integer.parseInt(limit), 1), maxLimit);
+        } catch (NumberFormatException e) {
+            return null;
+        }
     }
 
 }
@@ -0,0 +1,14 @@
+package com.example.springbootwebfluxapirest.models.dao;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+import java.time.Duration;
+
+@ResponseStatus(HttpStatus.SERVICE_UNAVAILABLE)
+public class DeadlineExceededException extends RuntimeException {
+
+	public DeadlineExceededException(Duration plazo, Throwable cause) {
+		super("Mongo no respondio en " + plazo.toMillis() + " ms, intente mas tarde", cause);
+	}
+}
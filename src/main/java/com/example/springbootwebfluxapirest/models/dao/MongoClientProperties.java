@@ -0,0 +1,87 @@
+package com.example.springbootwebfluxapirest.models.dao;
+
+import com.mongodb.ReadPreference;
+import com.mongodb.TagSet;
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+//Propiedades config.mongo.*: pool y sockets del cliente, plazos por operacion y preferencia de lectura.
+//Lo del cliente se aplica despues de spring.data.mongodb.uri y reemplaza lo que diga la URI.
+@Getter
+@Setter
+@Component
+@ConfigurationProperties(prefix = "config.mongo")
+public class MongoClientProperties {
+
+    private Pool pool = new Pool();
+
+    private Duration connectTimeout = Duration.ofSeconds(2);
+
+    //Respaldo por si una respuesta no llega nunca, los plazos de cada operacion son mas cortos
+    private Duration socketTimeout = Duration.ofSeconds(30);
+
+    private Duration serverSelectionTimeout = Duration.ofSeconds(2);
+
+    private Timeouts timeouts = new Timeouts();
+
+    //Para busquedas y streaming, vacio usa la del cliente
+    private String listReadPreference = "secondaryPreferred";
+
+    //Minimo 90s segun Mongo, vacio no limita el atraso del secundario
+    private Duration maxStaleness;
+
+    private Retry retry = new Retry();
+
+    //Null si las lecturas de listados van con la preferencia del cliente
+    public ReadPreference listReadPreference() {
+        if (listReadPreference == null || listReadPreference.isBlank()) {
+            return null;
+        }
+        if (maxStaleness == null || "primary".equalsIgnoreCase(listReadPreference)) {
+            return ReadPreference.valueOf(listReadPreference);
+        }
+        return ReadPreference.valueOf(listReadPreference, List.<TagSet>of(), maxStaleness.toMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    @Getter
+    @Setter
+    public static class Pool {
+
+        private int maxSize = 100;
+
+        private int minSize = 0;
+
+        //Tiempo maximo en la cola de espera por una conexion libre
+        private Duration maxWaitTime = Duration.ofSeconds(1);
+
+        private Duration maxConnectionIdleTime = Duration.ofMinutes(5);
+
+        //Conexiones que se pueden estar abriendo a la vez
+        private int maxConnecting = 2;
+    }
+
+    @Getter
+    @Setter
+    public static class Timeouts {
+
+        private Duration read = Duration.ofSeconds(2);
+
+        private Duration write = Duration.ofSeconds(5);
+    }
+
+    @Getter
+    @Setter
+    public static class Retry {
+
+        //Solo lecturas y solo errores transitorios, 0 desactiva el reintento
+        private int maxRetries = 1;
+
+        private Duration backoff = Duration.ofMillis(100);
+    }
+}
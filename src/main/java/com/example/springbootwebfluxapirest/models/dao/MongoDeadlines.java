@@ -0,0 +1,90 @@
+package com.example.springbootwebfluxapirest.models.dao;
+
+import com.mongodb.MongoSocketException;
+import com.mongodb.MongoTimeoutException;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.dao.TransientDataAccessException;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.util.retry.Retry;
+
+import java.time.Duration;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Predicate;
+
+//Plazos por operacion sobre Mongo: un primario trabado corta la peticion en el plazo configurado
+//en lugar de dejarla esperando lo que tarde el socket. Las lecturas se pueden reintentar, las escrituras no.
+//El plazo de lectura es el total de la operacion: cada intento tiene su parte y los reintentos no lo estiran.
+@Component
+public class MongoDeadlines {
+
+    private final Duration read;
+    private final Duration intento;
+    private final Duration write;
+    private final int maxRetries;
+    private final Duration backoff;
+
+    @Autowired
+    public MongoDeadlines(MongoClientProperties properties) {
+        this(properties.getTimeouts().getRead(), properties.getTimeouts().getWrite(),
+                properties.getRetry().getMaxRetries(), properties.getRetry().getBackoff());
+    }
+
+    public MongoDeadlines(Duration read, Duration write, int maxRetries, Duration backoff) {
+        this.read = read;
+        this.intento = read.dividedBy(maxRetries + 1);
+        this.write = write;
+        this.maxRetries = maxRetries;
+        this.backoff = backoff;
+    }
+
+    public <T> Mono<T> read(Mono<T> mono) {
+        return mono.timeout(intento)
+                .retryWhen(retry(e -> true))
+                .timeout(read)
+                .onErrorMap(TimeoutException.class, e -> new DeadlineExceededException(read, e));
+    }
+
+    //El primer elemento tiene el plazo total, despues el plazo corre entre elementos; la lista la junta quien llama.
+    //Se reintenta solo si todavia no salio ningun elemento, asi no hay repetidos.
+    public <T> Flux<T> read(Flux<T> flux) {
+        return Flux.defer(() -> {
+            AtomicBoolean emitido = new AtomicBoolean();
+            return flux.timeout(Mono.delay(intento), elemento -> Mono.delay(read))
+                    .doOnNext(elemento -> emitido.set(true))
+                    .retryWhen(retry(e -> !emitido.get()))
+                    .timeout(Mono.delay(read), elemento -> Mono.never())
+                    .onErrorMap(TimeoutException.class, e -> new DeadlineExceededException(read, e));
+        });
+    }
+
+    //Para streaming solo el primer elemento tiene plazo: despues el ritmo lo marca la demanda del cliente
+    public <T> Flux<T> stream(Flux<T> flux) {
+        return flux.timeout(Mono.delay(read), elemento -> Mono.never())
+                .onErrorMap(TimeoutException.class, e -> new DeadlineExceededException(read, e));
+    }
+
+    //Un plazo vencido no asegura que la escritura no se haya aplicado
+    public <T> Mono<T> write(Mono<T> mono) {
+        return mono.timeout(write)
+                .onErrorMap(TimeoutException.class, e -> new DeadlineExceededException(write, e));
+    }
+
+    private Retry retry(Predicate<Throwable> condicion) {
+        return Retry.backoff(maxRetries, backoff)
+                .filter(e -> transitorio(e) && condicion.test(e))
+                .onRetryExhaustedThrow((spec, signal) -> signal.failure());
+    }
+
+    //Errores que pueden no repetirse: Mongo caido, sin primario o lento
+    public static boolean transitorio(Throwable e) {
+        return e instanceof TimeoutException
+                || e instanceof TransientDataAccessException
+                || e instanceof DataAccessResourceFailureException
+                || e instanceof MongoSocketException
+                || e instanceof MongoTimeoutException;
+    }
+}
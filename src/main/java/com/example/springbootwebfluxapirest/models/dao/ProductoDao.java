@@ -1,12 +1,18 @@
 package com.example.springbootwebfluxapirest.models.dao;
 
 import com.example.springbootwebfluxapirest.models.documents.Producto;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.mongodb.repository.Query;
 import org.springframework.data.mongodb.repository.ReactiveMongoRepository;
+import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
 public interface ProductoDao extends ReactiveMongoRepository<Producto, String> {
     Mono<Producto> findByNombre(String nombre);
     @Query("{ 'nombre': ?0}")
     Mono<Producto> obtenerPorNombre(String nombre);
+
+    //Paginacion por cursor sobre el _id (el ObjectId crece con la fecha de creacion)
+    Flux<Producto> findAllBy(Pageable pageable);
+    Flux<Producto> findByIdGreaterThan(String id, Pageable pageable);
 }
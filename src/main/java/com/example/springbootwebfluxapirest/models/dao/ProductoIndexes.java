@@ -0,0 +1,48 @@
+package com.example.springbootwebfluxapirest.models.dao;
+
+import com.example.springbootwebfluxapirest.models.documents.Producto;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.index.Index;
+import org.springframework.data.mongodb.core.index.IndexDefinition;
+import org.springframework.data.mongodb.core.index.TextIndexDefinition;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+
+import java.util.List;
+
+//Indices que usan las busquedas de productos, se crean al arrancar si no existen
+@Component
+public class ProductoIndexes {
+
+    private static final Logger log = LoggerFactory.getLogger(ProductoIndexes.class);
+
+    private static final List<IndexDefinition> INDEXES = List.of(
+            new Index().on("nombre", Sort.Direction.ASC),
+            new Index().on("precio", Sort.Direction.ASC),
+            new Index().on("createAt", Sort.Direction.DESC),
+            new Index().on("categoria._id", Sort.Direction.ASC).on("precio", Sort.Direction.ASC),
+            new Index().on("categoria._id", Sort.Direction.ASC).on("createAt", Sort.Direction.DESC),
+            new TextIndexDefinition.TextIndexDefinitionBuilder()
+                    .onField("nombre")
+                    .withDefaultLanguage("spanish")
+                    .build());
+
+    private final ReactiveMongoTemplate mongoTemplate;
+
+    public ProductoIndexes(ReactiveMongoTemplate mongoTemplate) {
+        this.mongoTemplate = mongoTemplate;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void ensureIndexes() {
+        Flux.fromIterable(INDEXES)
+                .concatMap(index -> mongoTemplate.indexOps(Producto.class).ensureIndex(index))
+                .subscribe(name -> log.info("Indice de productos: " + name),
+                        e -> log.error("No se pudieron crear los indices de productos", e));
+    }
+}
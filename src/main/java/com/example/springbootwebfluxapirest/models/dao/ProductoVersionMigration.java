@@ -0,0 +1,50 @@
+package com.example.springbootwebfluxapirest.models.dao;
+
+import com.example.springbootwebfluxapirest.models.documents.Producto;
+import com.mongodb.client.result.UpdateResult;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+
+import static org.springframework.data.mongodb.core.query.Criteria.where;
+import static org.springframework.data.mongodb.core.query.Query.query;
+
+//Los productos guardados antes de agregar @Version no tienen el campo: Spring Data los toma como
+//nuevos (save hace un insert con el mismo _id) y no tienen ETag. Se les pone version 0 al arrancar.
+@Component
+public class ProductoVersionMigration implements ApplicationRunner {
+
+    private static final Logger log = LoggerFactory.getLogger(ProductoVersionMigration.class);
+
+    private final ReactiveMongoTemplate mongoTemplate;
+    private final Duration timeout;
+
+    public ProductoVersionMigration(ReactiveMongoTemplate mongoTemplate,
+                                    @Value("${config.productos.migration.timeout}") Duration timeout) {
+        this.mongoTemplate = mongoTemplate;
+        this.timeout = timeout;
+    }
+
+    //Corre antes de que la aplicacion quede lista, ninguna peticion ve un producto sin version
+    @Override
+    public void run(ApplicationArguments args) {
+        Long migrados = migrate().block(timeout);
+        if (migrados != null && migrados > 0) {
+            log.info("Se agrego version 0 a " + migrados + " productos sin version");
+        }
+    }
+
+    public Mono<Long> migrate() {
+        //Con version en el $set el template no la incrementa por su cuenta
+        return mongoTemplate.updateMulti(query(where("version").exists(false)), new Update().set("version", 0L), Producto.class)
+                .map(UpdateResult::getModifiedCount);
+    }
+}
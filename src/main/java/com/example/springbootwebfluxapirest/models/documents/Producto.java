@@ -1,6 +1,7 @@
 package com.example.springbootwebfluxapirest.models.documents;
 
 import java.util.Date;
+import java.util.Map;
 
 import jakarta.validation.Valid;
 import jakarta.validation.constraints.NotEmpty;
@@ -9,6 +10,7 @@ import lombok.Getter;
 import lombok.NoArgsConstructor;
 import lombok.Setter;
 import org.springframework.data.annotation.Id;
+import org.springframework.data.annotation.Version;
 import org.springframework.data.mongodb.core.mapping.Document;
 import org.springframework.format.annotation.DateTimeFormat;
 
@@ -29,6 +31,9 @@ public class Producto {
 	
 	@DateTimeFormat(pattern = "yyyy-MM-dd")
 	private Date createAt;
+
+	//Fecha de la ultima escritura
+	private Date updateAt;
 	
 	@Valid
 	@NotNull
@@ -36,6 +41,15 @@ public class Producto {
 	
 	private String foto;
 
+	private String fotoHash;
+
+	//Ancho en pixeles -> clave de la miniatura en el almacenamiento de fotos
+	private Map<String, String> thumbnails;
+
+	//Se incrementa en cada escritura, es la base del ETag y del If-Match en las ediciones
+	@Version
+	private Long version;
+
 	public Producto(String nombre, Double precio) {
 		this.nombre = nombre;
 		this.precio = precio;
@@ -0,0 +1,19 @@
+package com.example.springbootwebfluxapirest.models.journal;
+
+import com.example.springbootwebfluxapirest.models.documents.Producto;
+
+//Registro del diario: una escritura aceptada (con producto) o el resultado de aplicarla (con estado)
+public record JournalEntry(String operacion, Producto producto, Operacion.Estado estado, String mensaje) {
+
+    static JournalEntry escritura(String operacion, Producto producto) {
+        return new JournalEntry(operacion, producto, null, null);
+    }
+
+    static JournalEntry resultado(String operacion, Operacion.Estado estado, String mensaje) {
+        return new JournalEntry(operacion, null, estado, mensaje);
+    }
+
+    boolean esEscritura() {
+        return producto != null;
+    }
+}
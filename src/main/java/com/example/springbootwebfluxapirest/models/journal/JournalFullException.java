@@ -0,0 +1,12 @@
+package com.example.springbootwebfluxapirest.models.journal;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+@ResponseStatus(HttpStatus.SERVICE_UNAVAILABLE)
+public class JournalFullException extends RuntimeException {
+
+	public JournalFullException(int maxPending) {
+		super("Hay " + maxPending + " escrituras pendientes de aplicar, intente mas tarde");
+	}
+}
@@ -0,0 +1,34 @@
+package com.example.springbootwebfluxapirest.models.journal;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+
+import java.util.Date;
+
+//Estado de una escritura aceptada en modo write-behind
+@Getter
+@NoArgsConstructor
+@AllArgsConstructor
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class Operacion {
+
+	public enum Estado { PENDIENTE, APLICADA, ERROR }
+
+	private String id;
+
+	//Se asigna al aceptar la escritura, el producto existe en Mongo cuando el estado es APLICADA
+	private String productoId;
+
+	private Estado estado;
+
+	//Solo con estado ERROR
+	private String mensaje;
+
+	private Date aceptada;
+
+	Operacion con(Estado estado, String mensaje) {
+		return new Operacion(id, productoId, estado, mensaje, aceptada);
+	}
+}
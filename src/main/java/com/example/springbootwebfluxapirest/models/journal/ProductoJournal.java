@@ -0,0 +1,185 @@
+package com.example.springbootwebfluxapirest.models.journal;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+//Diario de escrituras en segmentos de tamaño fijo mapeados en memoria, solo se agrega al final.
+//Cada registro es largo (int), crc32 (int) y el JSON de la entrada; un largo 0 marca el final.
+//Un segmento se borra cuando todas las escrituras que contiene ya tienen resultado.
+class ProductoJournal implements Closeable {
+
+    private static final Logger log = LoggerFactory.getLogger(ProductoJournal.class);
+
+    private static final int HEADER = 8;
+    private static final String PREFIX = "segment-";
+    private static final String SUFFIX = ".log";
+
+    private final Path directory;
+    private final int segmentSize;
+    private final boolean sync;
+    private final ObjectMapper mapper;
+
+    //Segmento -> escrituras sin resultado que contiene
+    private final TreeMap<Long, Integer> pendientesPorSegmento = new TreeMap<>();
+    private final Map<String, Long> segmentoDeOperacion = new HashMap<>();
+
+    private long segmento;
+    private FileChannel channel;
+    private MappedByteBuffer buffer;
+
+    ProductoJournal(Path directory, int segmentSize, boolean sync, ObjectMapper mapper) {
+        this.directory = directory;
+        this.segmentSize = segmentSize;
+        this.sync = sync;
+        this.mapper = mapper;
+    }
+
+    //Recorre los segmentos existentes y devuelve, en orden, las escrituras que quedaron sin resultado
+    synchronized List<JournalEntry> open() throws IOException {
+        Files.createDirectories(directory);
+        List<Long> segmentos;
+        try (Stream<Path> files = Files.list(directory)) {
+            segmentos = files.map(path -> path.getFileName().toString())
+                    .filter(name -> name.startsWith(PREFIX) && name.endsWith(SUFFIX))
+                    .map(name -> Long.parseLong(name.substring(PREFIX.length(), name.length() - SUFFIX.length())))
+                    .sorted()
+                    .toList();
+        }
+        Map<String, JournalEntry> pendientes = new LinkedHashMap<>();
+        for (long numero : segmentos) {
+            map(numero);
+            leer(numero, pendientes);
+        }
+        if (segmentos.isEmpty()) {
+            map(1);
+        }
+        //Los segmentos anteriores que ya no tienen nada pendiente sobran
+        for (long numero : segmentos) {
+            if (numero != segmento && !pendientesPorSegmento.containsKey(numero)) {
+                Files.deleteIfExists(path(numero));
+            }
+        }
+        return new ArrayList<>(pendientes.values());
+    }
+
+    //Escribe las entradas en orden y con sync las baja a disco una sola vez al final
+    synchronized void append(List<JournalEntry> entries) throws IOException {
+        for (JournalEntry entry : entries) {
+            byte[] json = mapper.writeValueAsBytes(entry);
+            if (HEADER + json.length > segmentSize) {
+                throw new IllegalArgumentException("La entrada ocupa " + json.length + " bytes, mas que un segmento del diario");
+            }
+            if (buffer.remaining() < HEADER + json.length) {
+                rotar();
+            }
+            CRC32 crc = new CRC32();
+            crc.update(json);
+            buffer.putInt(json.length).putInt((int) crc.getValue()).put(json);
+            if (buffer.remaining() >= 4) {
+                //Pisa los restos de un registro cortado que pudiera haber quedado despues
+                buffer.putInt(buffer.position(), 0);
+            }
+            registrar(segmento, entry);
+        }
+        if (sync) {
+            buffer.force();
+        }
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (channel != null) {
+            channel.close();
+        }
+    }
+
+    private void leer(long numero, Map<String, JournalEntry> pendientes) throws IOException {
+        while (buffer.remaining() >= HEADER) {
+            int inicio = buffer.position();
+            int largo = buffer.getInt();
+            int esperado = buffer.getInt();
+            if (largo <= 0 || largo > buffer.remaining()) {
+                buffer.position(inicio);
+                break;
+            }
+            byte[] json = new byte[largo];
+            buffer.get(json);
+            CRC32 crc = new CRC32();
+            crc.update(json);
+            if ((int) crc.getValue() != esperado) {
+                //Registro cortado por una caida a mitad de escritura, lo que sigue no es valido
+                log.warn("Registro invalido en " + path(numero) + " posicion " + inicio + ", se descarta el resto del segmento");
+                buffer.position(inicio);
+                break;
+            }
+            JournalEntry entry = mapper.readValue(json, JournalEntry.class);
+            if (entry.esEscritura()) {
+                pendientes.put(entry.operacion(), entry);
+            } else {
+                pendientes.remove(entry.operacion());
+            }
+            registrar(numero, entry);
+        }
+        if (buffer.remaining() >= 4) {
+            buffer.putInt(buffer.position(), 0);
+        }
+    }
+
+    private void registrar(long numero, JournalEntry entry) throws IOException {
+        if (entry.esEscritura()) {
+            pendientesPorSegmento.merge(numero, 1, Integer::sum);
+            segmentoDeOperacion.put(entry.operacion(), numero);
+            return;
+        }
+        Long origen = segmentoDeOperacion.remove(entry.operacion());
+        if (origen != null && pendientesPorSegmento.merge(origen, -1, Integer::sum) == 0) {
+            pendientesPorSegmento.remove(origen);
+            if (origen != segmento) {
+                Files.deleteIfExists(path(origen));
+            }
+        }
+    }
+
+    private void rotar() throws IOException {
+        if (sync) {
+            buffer.force();
+        }
+        long anterior = segmento;
+        map(segmento + 1);
+        if (!pendientesPorSegmento.containsKey(anterior)) {
+            Files.deleteIfExists(path(anterior));
+        }
+    }
+
+    private void map(long numero) throws IOException {
+        if (channel != null) {
+            channel.close();
+        }
+        segmento = numero;
+        channel = FileChannel.open(path(numero), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        //El archivo nuevo se crea con el tamaño completo, lleno de ceros.
+        //Uno existente se mapea entero aunque haya cambiado config.productos.write-behind.segment-size.
+        buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, Math.max(channel.size(), segmentSize));
+    }
+
+    private Path path(long numero) {
+        return directory.resolve(String.format("%s%06d%s", PREFIX, numero, SUFFIX));
+    }
+}
@@ -0,0 +1,193 @@
+package com.example.springbootwebfluxapirest.models.journal;
+
+import com.example.springbootwebfluxapirest.models.dao.DeadlineExceededException;
+import com.example.springbootwebfluxapirest.models.dao.MongoDeadlines;
+import com.example.springbootwebfluxapirest.models.documents.Producto;
+import com.example.springbootwebfluxapirest.models.services.BulkItemError;
+import com.example.springbootwebfluxapirest.models.services.ProductoService;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import jakarta.annotation.PreDestroy;
+import org.bson.types.ObjectId;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+import reactor.core.Disposable;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+import reactor.core.scheduler.Schedulers;
+import reactor.util.retry.Retry;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+
+//Modo write-behind: la escritura se acepta al quedar en el diario local y se aplica en Mongo
+//en segundo plano, por lotes y con saveAll. Lo que no llego a aplicarse se repite al arrancar.
+@Component
+@ConditionalOnProperty(name = "config.productos.write-behind.enabled", havingValue = "true")
+public class WriteBehindService {
+
+    private static final Logger log = LoggerFactory.getLogger(WriteBehindService.class);
+
+    private final ProductoService service;
+    private final ProductoJournal journal;
+    private final int batchSize;
+    private final Duration maxDelay;
+    private final int maxPending;
+
+    private final Map<String, Operacion> pendientes = new ConcurrentHashMap<>();
+    private final Cache<String, Operacion> terminadas;
+    private final Sinks.Many<JournalEntry> cola = Sinks.many().unicast().onBackpressureBuffer();
+    private Disposable drainer;
+
+    public WriteBehindService(ProductoService service, ObjectMapper mapper,
+                              @Value("${config.productos.write-behind.path}") String path,
+                              @Value("${config.productos.write-behind.segment-size}") DataSize segmentSize,
+                              @Value("${config.productos.write-behind.sync}") boolean sync,
+                              @Value("${config.productos.write-behind.batch-size}") int batchSize,
+                              @Value("${config.productos.write-behind.max-delay}") Duration maxDelay,
+                              @Value("${config.productos.write-behind.max-pending}") int maxPending,
+                              @Value("${config.productos.write-behind.status-ttl}") Duration statusTtl) throws IOException {
+        this.service = service;
+        this.journal = new ProductoJournal(Path.of(path).toAbsolutePath().normalize(), (int) segmentSize.toBytes(), sync, mapper);
+        this.batchSize = batchSize;
+        this.maxDelay = maxDelay;
+        this.maxPending = maxPending;
+        this.terminadas = Caffeine.newBuilder()
+                .expireAfterWrite(statusTtl)
+                .build();
+        List<JournalEntry> replay = journal.open();
+        if (!replay.isEmpty()) {
+            log.info("Se repiten " + replay.size() + " escrituras del diario que no llegaron a Mongo");
+        }
+        //La cola guarda lo que llega hasta que se suscribe el drainer
+        replay.forEach(entry -> {
+            pendientes.put(entry.operacion(), nueva(entry));
+            cola.tryEmitNext(entry);
+        });
+    }
+
+    //Se aplica en Mongo despues de la carga inicial y de crear los indices
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        drainer = cola.asFlux()
+                .bufferTimeout(batchSize, maxDelay)
+                //Cada reintento vuelve a armar el bulk
+                .concatMap(lote -> Mono.defer(() -> aplicar(lote))
+                        //Con Mongo caido el lote se reintenta sin perder el orden, lo nuevo espera en la cola.
+                        //Un plazo vencido tambien: el upsert por id se puede repetir aunque se haya aplicado.
+                        .retryWhen(Retry.backoff(Long.MAX_VALUE, Duration.ofSeconds(1))
+                                .maxBackoff(Duration.ofSeconds(30))
+                                .filter(e -> MongoDeadlines.transitorio(e) || e instanceof DeadlineExceededException)
+                                .doBeforeRetry(signal -> log.warn("No se pudo aplicar un lote de " + lote.size()
+                                        + " escrituras, se reintenta", signal.failure())))
+                        //Otro error se repetiria siempre y trabaria la cola: el lote queda en ERROR y se sigue
+                        .onErrorResume(e -> fallar(lote, e)))
+                .subscribe();
+    }
+
+    @PreDestroy
+    public void stop() throws IOException {
+        if (drainer != null) {
+            drainer.dispose();
+        }
+        journal.close();
+    }
+
+    //La operacion queda aceptada cuando la escritura esta en el diario
+    public Mono<Operacion> submit(Producto producto) {
+        return Mono.fromCallable(() -> {
+                    if (pendientes.size() >= maxPending) {
+                        throw new JournalFullException(maxPending);
+                    }
+                    //El id se asigna ahora: la respuesta lo informa y repetir la escritura tras una caida no duplica el producto.
+                    //Siempre uno nuevo, saveAll es un upsert y con el id del cliente pisaria otro producto sin If-Match.
+                    producto.setId(new ObjectId().toHexString());
+                    if (producto.getCreateAt() == null) {
+                        producto.setCreateAt(new Date());
+                    }
+                    producto.setVersion(null);
+                    JournalEntry entry = JournalEntry.escritura(new ObjectId().toHexString(), producto);
+                    Operacion operacion = nueva(entry);
+                    //El orden del diario y el de la cola tienen que coincidir
+                    synchronized (cola) {
+                        journal.append(List.of(entry));
+                        pendientes.put(operacion.getId(), operacion);
+                        cola.tryEmitNext(entry);
+                    }
+                    return operacion;
+                })
+                .subscribeOn(Schedulers.boundedElastic());
+    }
+
+    public Mono<Operacion> estado(String id) {
+        return Mono.fromSupplier(() -> {
+            Operacion operacion = pendientes.get(id);
+            return operacion != null ? operacion : terminadas.getIfPresent(id);
+        });
+    }
+
+    private Mono<Void> aplicar(List<JournalEntry> lote) {
+        List<Producto> productos = lote.stream().map(JournalEntry::producto).toList();
+        return service.saveAll(productos)
+                .publishOn(Schedulers.boundedElastic())
+                .flatMap(errores -> Mono.fromCallable(() -> {
+                    Map<Long, BulkItemError> fallidos = errores.stream()
+                            .collect(Collectors.toMap(BulkItemError::getIndice, error -> error, (a, b) -> a));
+                    List<JournalEntry> resultados = new ArrayList<>(lote.size());
+                    for (int i = 0; i < lote.size(); i++) {
+                        BulkItemError error = fallidos.get((long) i);
+                        resultados.add(error == null
+                                ? JournalEntry.resultado(lote.get(i).operacion(), Operacion.Estado.APLICADA, null)
+                                : JournalEntry.resultado(lote.get(i).operacion(), Operacion.Estado.ERROR, error.getMensaje()));
+                    }
+                    registrar(resultados);
+                    return resultados.size();
+                }))
+                .then();
+    }
+
+    private Mono<Void> fallar(List<JournalEntry> lote, Throwable e) {
+        log.error("No se pudo aplicar un lote de " + lote.size() + " escrituras, quedan con error", e);
+        return Mono.fromRunnable(() -> registrar(lote.stream()
+                        .map(entry -> JournalEntry.resultado(entry.operacion(), Operacion.Estado.ERROR, e.getMessage()))
+                        .toList()))
+                .subscribeOn(Schedulers.boundedElastic())
+                .then();
+    }
+
+    private void registrar(List<JournalEntry> resultados) {
+        try {
+            journal.append(resultados);
+        } catch (IOException e) {
+            //Sin el resultado en el diario el lote se vuelve a aplicar al arrancar, el upsert por id lo tolera
+            log.error("No se pudieron guardar " + resultados.size() + " resultados en el diario", e);
+        }
+        resultados.forEach(this::terminar);
+    }
+
+    private void terminar(JournalEntry resultado) {
+        Operacion operacion = pendientes.remove(resultado.operacion());
+        if (operacion != null) {
+            terminadas.put(operacion.getId(), operacion.con(resultado.estado(), resultado.mensaje()));
+        }
+    }
+
+    private static Operacion nueva(JournalEntry entry) {
+        return new Operacion(entry.operacion(), entry.producto().getId(), Operacion.Estado.PENDIENTE, null,
+                new ObjectId(entry.operacion()).getDate());
+    }
+}
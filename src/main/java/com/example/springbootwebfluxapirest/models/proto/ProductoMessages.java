@@ -0,0 +1,88 @@
+package com.example.springbootwebfluxapirest.models.proto;
+
+import com.example.springbootwebfluxapirest.models.documents.Categoria;
+import com.example.springbootwebfluxapirest.models.documents.Producto;
+
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+
+//Conversion entre los documentos y los mensajes de producto.proto, los campos nulos no se envian
+public final class ProductoMessages {
+
+    private ProductoMessages() {
+    }
+
+    public static ProductoMessage toMessage(Producto producto) {
+        ProductoMessage.Builder builder = ProductoMessage.newBuilder();
+        if (producto.getId() != null) {
+            builder.setId(producto.getId());
+        }
+        if (producto.getNombre() != null) {
+            builder.setNombre(producto.getNombre());
+        }
+        if (producto.getPrecio() != null) {
+            builder.setPrecio(producto.getPrecio());
+        }
+        if (producto.getCreateAt() != null) {
+            builder.setCreateAt(producto.getCreateAt().getTime());
+        }
+        if (producto.getUpdateAt() != null) {
+            builder.setUpdateAt(producto.getUpdateAt().getTime());
+        }
+        if (producto.getCategoria() != null) {
+            builder.setCategoria(toMessage(producto.getCategoria()));
+        }
+        if (producto.getFoto() != null) {
+            builder.setFoto(producto.getFoto());
+        }
+        if (producto.getFotoHash() != null) {
+            builder.setFotoHash(producto.getFotoHash());
+        }
+        if (producto.getThumbnails() != null) {
+            builder.putAllThumbnails(producto.getThumbnails());
+        }
+        if (producto.getVersion() != null) {
+            builder.setVersion(producto.getVersion());
+        }
+        return builder.build();
+    }
+
+    public static CategoriaMessage toMessage(Categoria categoria) {
+        CategoriaMessage.Builder builder = CategoriaMessage.newBuilder();
+        if (categoria.getId() != null) {
+            builder.setId(categoria.getId());
+        }
+        if (categoria.getNombre() != null) {
+            builder.setNombre(categoria.getNombre());
+        }
+        return builder.build();
+    }
+
+    public static ProductoListMessage toMessage(List<Producto> productos) {
+        ProductoListMessage.Builder builder = ProductoListMessage.newBuilder();
+        productos.forEach(producto -> builder.addProductos(toMessage(producto)));
+        return builder.build();
+    }
+
+    public static Producto fromMessage(ProductoMessage message) {
+        Producto producto = new Producto();
+        producto.setId(message.hasId() ? message.getId() : null);
+        producto.setNombre(message.hasNombre() ? message.getNombre() : null);
+        producto.setPrecio(message.hasPrecio() ? message.getPrecio() : null);
+        producto.setCreateAt(message.hasCreateAt() ? new Date(message.getCreateAt()) : null);
+        producto.setUpdateAt(message.hasUpdateAt() ? new Date(message.getUpdateAt()) : null);
+        producto.setCategoria(message.hasCategoria() ? fromMessage(message.getCategoria()) : null);
+        producto.setFoto(message.hasFoto() ? message.getFoto() : null);
+        producto.setFotoHash(message.hasFotoHash() ? message.getFotoHash() : null);
+        producto.setThumbnails(message.getThumbnailsCount() > 0 ? new HashMap<>(message.getThumbnailsMap()) : null);
+        producto.setVersion(message.hasVersion() ? message.getVersion() : null);
+        return producto;
+    }
+
+    public static Categoria fromMessage(CategoriaMessage message) {
+        Categoria categoria = new Categoria(message.hasNombre() ? message.getNombre() : null);
+        categoria.setId(message.hasId() ? message.getId() : null);
+        return categoria;
+    }
+}
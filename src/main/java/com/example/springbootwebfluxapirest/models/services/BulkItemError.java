@@ -0,0 +1,18 @@
+package com.example.springbootwebfluxapirest.models.services;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+
+@Getter
+@NoArgsConstructor
+@AllArgsConstructor
+public class BulkItemError {
+
+	//Posicion del producto dentro del lote recibido
+	private long indice;
+
+	private String id;
+
+	private String mensaje;
+}
@@ -0,0 +1,30 @@
+package com.example.springbootwebfluxapirest.models.services;
+
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+
+import java.util.ArrayList;
+import java.util.List;
+
+@Getter
+@NoArgsConstructor
+public class BulkResult {
+
+	private long total;
+
+	private long guardados;
+
+	private List<BulkItemError> errores = new ArrayList<>();
+
+	public BulkResult(long total, List<BulkItemError> errores) {
+		this.total = total;
+		this.guardados = total - errores.size();
+		this.errores = errores;
+	}
+
+	public BulkResult merge(BulkResult other) {
+		List<BulkItemError> merged = new ArrayList<>(errores);
+		merged.addAll(other.errores);
+		return new BulkResult(total + other.total, merged);
+	}
+}
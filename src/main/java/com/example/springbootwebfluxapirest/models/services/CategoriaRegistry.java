@@ -0,0 +1,160 @@
+package com.example.springbootwebfluxapirest.models.services;
+
+import com.example.springbootwebfluxapirest.models.dao.CategoriaDao;
+import com.example.springbootwebfluxapirest.models.dao.MongoDeadlines;
+import com.example.springbootwebfluxapirest.models.documents.Categoria;
+import com.example.springbootwebfluxapirest.models.documents.Producto;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Component;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.time.Duration;
+import java.util.Date;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static org.springframework.data.mongodb.core.query.Criteria.where;
+import static org.springframework.data.mongodb.core.query.Query.query;
+
+//Las categorias son pocas y casi no cambian, asi que se sirven desde memoria
+@Component
+public class CategoriaRegistry {
+
+    private static final Logger log = LoggerFactory.getLogger(CategoriaRegistry.class);
+
+    //Productos por evento publicado al propagar un nombre, acota lo que hay en memoria a la vez
+    private static final int PROPAGACION_LOTE = 500;
+
+    private final CategoriaDao dao;
+    private final ReactiveMongoTemplate mongoTemplate;
+    private final MongoDeadlines deadlines;
+    private final ProductoCache productoCache;
+    private final ApplicationEventPublisher events;
+    private final Duration refreshInterval;
+
+    private final Map<String, Categoria> categorias = new ConcurrentHashMap<>();
+    private volatile Mono<Void> loaded;
+    private Disposable refresher;
+
+    public CategoriaRegistry(CategoriaDao dao, ReactiveMongoTemplate mongoTemplate, MongoDeadlines deadlines, ProductoCache productoCache,
+                             ApplicationEventPublisher events, @Value("${config.categorias.refresh-interval}") Duration refreshInterval) {
+        this.dao = dao;
+        this.mongoTemplate = mongoTemplate;
+        this.deadlines = deadlines;
+        this.productoCache = productoCache;
+        this.events = events;
+        this.refreshInterval = refreshInterval;
+        this.loaded = firstLoad();
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void preload() {
+        loaded.subscribe();
+        refresher = Flux.interval(refreshInterval, refreshInterval)
+                .concatMap(tick -> load().onErrorResume(e -> {
+                    log.warn("No se pudieron recargar las categorias", e);
+                    return Mono.empty();
+                }))
+                .subscribe();
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (refresher != null) {
+            refresher.dispose();
+        }
+    }
+
+    public Flux<Categoria> findAll() {
+        return loaded.thenMany(Flux.defer(() -> Flux.fromIterable(categorias.values())));
+    }
+
+    public Mono<Categoria> findById(String id) {
+        //Una categoria creada en otro nodo se busca en Mongo hasta la siguiente recarga
+        return loaded.then(Mono.fromSupplier(() -> categorias.get(id)))
+                .switchIfEmpty(Mono.defer(() -> deadlines.read(dao.findById(id)).doOnNext(this::register)));
+    }
+
+    public Mono<Categoria> findByNombre(String nombre) {
+        return loaded.then(Mono.fromSupplier(() -> categorias.values().stream()
+                        .filter(c -> Objects.equals(c.getNombre(), nombre))
+                        .findFirst()
+                        .orElse(null)))
+                .switchIfEmpty(Mono.defer(() -> deadlines.read(dao.findCategoriaByNombre(nombre)).doOnNext(this::register)));
+    }
+
+    //El nombre anterior se lee de Mongo: la copia en memoria puede faltar (categoria de otro nodo)
+    //o ser la misma instancia que se esta guardando con el nombre ya cambiado.
+    //Los productos se renombran en segundo plano, una categoria grande no demora la respuesta.
+    public Mono<Categoria> save(Categoria categoria) {
+        Mono<Optional<String>> anterior = categoria.getId() == null ? Mono.just(Optional.empty())
+                : deadlines.read(dao.findById(categoria.getId())).map(previous -> Optional.ofNullable(previous.getNombre())).defaultIfEmpty(Optional.empty());
+        return anterior.flatMap(nombre -> deadlines.write(dao.save(categoria)).flatMap(saved -> {
+            register(saved);
+            if (nombre.isEmpty() || Objects.equals(nombre.get(), saved.getNombre())) {
+                return Mono.just(saved);
+            }
+            propagateNombre(saved).subscribe(
+                    modificados -> log.info("Categoria " + saved.getId() + " renombrada en " + modificados + " productos"),
+                    e -> log.error("No se pudo renombrar la categoria " + saved.getId() + " en los productos", e));
+            return Mono.just(saved);
+        }));
+    }
+
+    private void register(Categoria categoria) {
+        categorias.put(categoria.getId(), categoria);
+    }
+
+    //Las lecturas solo esperan la primera carga. Un error en esa carga no se guarda, la siguiente
+    //lectura vuelve a intentarlo; despues de la primera se sirve lo cargado y las recargas no bloquean.
+    private Mono<Void> firstLoad() {
+        return load()
+                .cache(v -> Duration.ofMillis(Long.MAX_VALUE), e -> Duration.ZERO, () -> Duration.ofMillis(Long.MAX_VALUE));
+    }
+
+    private Mono<Void> load() {
+        //No hay borrado de categorias, asi que la recarga solo agrega o actualiza entradas.
+        //Se aplica completa o nada: una recarga cortada no deja el mapa a medias.
+        return deadlines.read(dao.findAll())
+                .collectList()
+                .doOnNext(cargadas -> cargadas.forEach(this::register))
+                .then()
+                .doOnSuccess(v -> loaded = Mono.empty());
+    }
+
+    //Los productos guardan una copia de su categoria.
+    //Cada producto cambia de version y se publica como UPDATE: las caches de los demas nodos
+    //descartan la copia con el nombre anterior y los clientes del stream ven el cambio.
+    //Solo se leen id, version y categoria, y se publican por lotes a medida que llegan del cursor.
+    private Mono<Long> propagateNombre(Categoria categoria) {
+        return mongoTemplate.updateMulti(query(where("categoria.id").is(categoria.getId())),
+                        new Update().set("categoria.nombre", categoria.getNombre()).set("updateAt", new Date()).inc("version", 1),
+                        Producto.class)
+                .flatMap(result -> {
+                    Query productos = query(where("categoria.id").is(categoria.getId()));
+                    productos.fields().include("id", "version", "categoria");
+                    return mongoTemplate.find(productos, Producto.class)
+                            .buffer(PROPAGACION_LOTE)
+                            //Los listeners corren en este hilo, se publica fuera del de Mongo
+                            .concatMap(lote -> Mono.fromRunnable(() -> lote.forEach(producto -> {
+                                productoCache.invalidate(producto.getId());
+                                events.publishEvent(new ProductoChange(ProductoChange.Operacion.UPDATE, producto, categoria.getId()));
+                            })).subscribeOn(Schedulers.boundedElastic()))
+                            .then(Mono.just(result.getModifiedCount()));
+                });
+    }
+}
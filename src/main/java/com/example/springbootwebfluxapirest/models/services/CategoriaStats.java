@@ -0,0 +1,27 @@
+package com.example.springbootwebfluxapirest.models.services;
+
+import com.example.springbootwebfluxapirest.models.documents.Producto;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+
+@Getter
+@NoArgsConstructor
+@AllArgsConstructor
+public class CategoriaStats {
+
+	private String categoriaId;
+
+	private String nombre;
+
+	private long cantidad;
+
+	private Double precioPromedio;
+
+	private Double precioMin;
+
+	private Double precioMax;
+
+	//Producto mas reciente de la categoria, solo id, nombre y createAt
+	private Producto ultimo;
+}
@@ -0,0 +1,62 @@
+package com.example.springbootwebfluxapirest.models.services;
+
+import com.example.springbootwebfluxapirest.models.documents.Producto;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.Map;
+
+//Nivel compartido dentro del mismo proceso, reemplaza al remoto en pruebas y desarrollo
+@Component
+@ConditionalOnProperty(name = "config.productos.cache.shared.type", havingValue = "memory")
+public class InMemorySharedProductoCache implements SharedProductoCache {
+
+    private final Cache<String, Producto> cache;
+
+    public InMemorySharedProductoCache(@Value("${config.productos.cache.shared.ttl}") Duration ttl) {
+        this.cache = Caffeine.newBuilder()
+                .expireAfterWrite(ttl)
+                .build();
+    }
+
+    @Override
+    public Mono<Producto> get(String id) {
+        return Mono.fromSupplier(() -> cache.getIfPresent(id));
+    }
+
+    @Override
+    public Mono<Map<String, Producto>> getAll(Collection<String> ids) {
+        return Mono.fromSupplier(() -> cache.getAllPresent(ids));
+    }
+
+    @Override
+    public Mono<Void> put(Producto producto) {
+        return Mono.fromRunnable(() -> cache.asMap().merge(producto.getId(), producto,
+                (actual, nuevo) -> esMasNuevo(actual, nuevo) ? nuevo : actual));
+    }
+
+    @Override
+    public Mono<Void> evict(String id) {
+        return Mono.fromRunnable(() -> cache.invalidate(id));
+    }
+
+    @Override
+    public Mono<Void> evictAll() {
+        return Mono.fromRunnable(cache::invalidateAll);
+    }
+
+    @Override
+    public boolean isInProcess() {
+        return true;
+    }
+
+    private static boolean esMasNuevo(Producto actual, Producto nuevo) {
+        return actual.getVersion() == null || nuevo.getVersion() == null || nuevo.getVersion() >= actual.getVersion();
+    }
+}
@@ -0,0 +1,45 @@
+package com.example.springbootwebfluxapirest.models.services;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Sinks;
+
+import java.util.Objects;
+
+//Feed en memoria con los cambios hechos por este nodo, no necesita replica set
+@Component
+@ConditionalOnProperty(name = "config.productos.changes.source", havingValue = "local", matchIfMissing = true)
+public class LocalProductoChangeFeed implements ProductoChangeFeed {
+
+    private final Sinks.Many<ProductoChange> sink;
+    private long sequence;
+
+    //El historial reciente permite retomar el stream tras una reconexion corta
+    public LocalProductoChangeFeed(@Value("${config.productos.changes.history-size}") int historySize) {
+        this.sink = Sinks.many().replay().limit(historySize);
+    }
+
+    @EventListener
+    public synchronized void onChange(ProductoChange change) {
+        sink.tryEmitNext(change.withToken(String.valueOf(++sequence)));
+    }
+
+    @Override
+    public Flux<ProductoChange> changes(String resumeToken, String categoriaId) {
+        //Un token invalido falla aqui, antes de empezar a responder
+        Long resumeFrom = resumeToken != null ? Long.valueOf(resumeToken) : null;
+        return Flux.defer(() -> {
+            long from = resumeFrom != null ? resumeFrom : currentSequence();
+            return sink.asFlux()
+                    .filter(change -> Long.parseLong(change.getToken()) > from)
+                    .filter(change -> categoriaId == null || Objects.equals(categoriaId, change.getCategoriaId()));
+        });
+    }
+
+    private synchronized long currentSequence() {
+        return sequence;
+    }
+}
@@ -0,0 +1,82 @@
+package com.example.springbootwebfluxapirest.models.services;
+
+import com.example.springbootwebfluxapirest.models.documents.Producto;
+import org.bson.BsonDocument;
+import org.bson.BsonValue;
+import org.bson.json.JsonParseException;
+import org.bson.types.ObjectId;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.data.mongodb.core.ChangeStreamEvent;
+import org.springframework.data.mongodb.core.ReactiveChangeStreamOperation;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+
+import static org.springframework.data.mongodb.core.query.Criteria.where;
+
+//Feed basado en los change streams de Mongo, ve los cambios de todos los nodos (requiere replica set)
+@Component
+@ConditionalOnProperty(name = "config.productos.changes.source", havingValue = "mongo")
+public class MongoProductoChangeFeed implements ProductoChangeFeed {
+
+    private final ReactiveMongoTemplate mongoTemplate;
+
+    public MongoProductoChangeFeed(ReactiveMongoTemplate mongoTemplate) {
+        this.mongoTemplate = mongoTemplate;
+    }
+
+    @Override
+    public Flux<ProductoChange> changes(String resumeToken, String categoriaId) {
+        //Como el token, un filtro invalido falla aqui y el handler responde 400
+        if (categoriaId != null && !ObjectId.isValid(categoriaId)) {
+            throw new IllegalArgumentException("Categoria invalida: " + categoriaId);
+        }
+        Criteria filter = where("operationType").in("insert", "update", "replace", "delete");
+        if (categoriaId != null) {
+            //Los borrados no traen el documento, se envian siempre
+            filter = new Criteria().andOperator(filter, new Criteria().orOperator(
+                    where("operationType").is("delete"),
+                    where("fullDocument.categoria._id").is(new ObjectId(categoriaId))));
+        }
+        ReactiveChangeStreamOperation.ChangeStreamWithFilterAndProjection<Producto> stream = mongoTemplate.changeStream(Producto.class)
+                .withOptions(options -> options.returnFullDocumentOnUpdate())
+                .watchCollection(Producto.class)
+                .filter(filter);
+        return (resumeToken != null ? stream.resumeAfter(parseToken(resumeToken)) : stream)
+                .listen()
+                .map(this::toChange);
+    }
+
+    private static BsonDocument parseToken(String resumeToken) {
+        try {
+            return BsonDocument.parse(resumeToken);
+        } catch (JsonParseException e) {
+            throw new IllegalArgumentException("Token de reanudacion invalido", e);
+        }
+    }
+
+    private ProductoChange toChange(ChangeStreamEvent<Producto> event) {
+        String id = id(event.getRaw().getDocumentKey().get("_id"));
+        Producto producto = event.getBody();
+        ProductoChange.Operacion operacion = switch (event.getOperationType()) {
+            case INSERT -> ProductoChange.Operacion.INSERT;
+            case DELETE -> ProductoChange.Operacion.DELETE;
+            default -> ProductoChange.Operacion.UPDATE;
+        };
+        String categoriaId = producto != null && producto.getCategoria() != null ? producto.getCategoria().getId() : null;
+        return new ProductoChange(operacion, id, categoriaId, producto, event.getResumeToken().asDocument().toJson(), null);
+    }
+
+    //Los ids que asigna la aplicacion son ObjectId, pero un upsert masivo puede traer cualquier string.
+    //Un _id de otro tipo no puede cortar el stream de todos los suscriptores.
+    static String id(BsonValue id) {
+        return switch (id.getBsonType()) {
+            case OBJECT_ID -> id.asObjectId().getValue().toHexString();
+            case STRING -> id.asString().getValue();
+            case INT32 -> String.valueOf(id.asInt32().getValue());
+            case INT64 -> String.valueOf(id.asInt64().getValue());
+            default -> id.toString();
+        };
+    }
+}
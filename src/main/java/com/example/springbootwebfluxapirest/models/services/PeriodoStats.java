@@ -0,0 +1,18 @@
+package com.example.springbootwebfluxapirest.models.services;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+
+//Altas de productos en un periodo (dia, semana, mes o año segun createAt, en UTC)
+@Getter
+@NoArgsConstructor
+@AllArgsConstructor
+public class PeriodoStats {
+
+	private String periodo;
+
+	private long cantidad;
+
+	private Double precioPromedio;
+}
@@ -0,0 +1,20 @@
+package com.example.springbootwebfluxapirest.models.services;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+
+//Rango de precios [desde, hasta) del histograma
+@Getter
+@NoArgsConstructor
+@AllArgsConstructor
+public class PrecioBucket {
+
+	private Double desde;
+
+	private Double hasta;
+
+	private long cantidad;
+
+	private Double precioPromedio;
+}
@@ -0,0 +1,115 @@
+package com.example.springbootwebfluxapirest.models.services;
+
+import com.example.springbootwebfluxapirest.models.dao.ProductoDao;
+import com.example.springbootwebfluxapirest.models.documents.Producto;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+
+//Agrupa las busquedas por id en una sola consulta _id $in.
+//Mientras hay consultas en curso los ids nuevos esperan y salen juntos en la siguiente,
+//con poca carga cada busqueda sale sola y no paga ninguna espera.
+@Component
+public class ProductoBatchLoader {
+
+    private record Pedido(String id, CompletableFuture<Producto> resultado) {
+    }
+
+    private final ProductoDao dao;
+
+    private final int maxSize;
+
+    private final int concurrency;
+
+    private final Object lock = new Object();
+
+    private List<Pedido> pendientes = new ArrayList<>();
+
+    private int enCurso;
+
+    public ProductoBatchLoader(ProductoDao dao,
+                               @Value("${config.productos.batch.max-size}") int maxSize,
+                               @Value("${config.productos.batch.concurrency}") int concurrency) {
+        this.dao = dao;
+        this.maxSize = maxSize;
+        this.concurrency = concurrency;
+    }
+
+    public Mono<Producto> load(String id) {
+        return Mono.defer(() -> {
+            Pedido pedido = new Pedido(id, new CompletableFuture<>());
+            encolar(List.of(pedido));
+            return Mono.fromFuture(pedido.resultado());
+        });
+    }
+
+    //Los ids del multi-get entran juntos a la cola, asi no se reparten entre varias consultas.
+    //Los que no existen quedan fuera del mapa.
+    public Mono<Map<String, Producto>> loadAll(Collection<? extends String> ids) {
+        return Mono.defer(() -> {
+            List<Pedido> pedidos = ids.stream()
+                    .map(id -> new Pedido(id, new CompletableFuture<>()))
+                    .toList();
+            encolar(pedidos);
+            return Flux.fromIterable(pedidos)
+                    .concatMap(pedido -> Mono.fromFuture(pedido.resultado()))
+                    .collectMap(Producto::getId);
+        });
+    }
+
+    private void encolar(List<Pedido> pedidos) {
+        List<List<Pedido>> lotes = new ArrayList<>();
+        synchronized (lock) {
+            for (Pedido pedido : pedidos) {
+                pendientes.add(pedido);
+                //Un lote lleno sale aunque no haya consultas libres, asi ningun $in supera maxSize
+                if (pendientes.size() >= maxSize) {
+                    lotes.add(tomarPendientes());
+                }
+            }
+            if (!pendientes.isEmpty() && enCurso < concurrency) {
+                lotes.add(tomarPendientes());
+            }
+        }
+        lotes.forEach(this::consultar);
+    }
+
+    private List<Pedido> tomarPendientes() {
+        List<Pedido> lote = pendientes;
+        pendientes = new ArrayList<>();
+        enCurso++;
+        return lote;
+    }
+
+    private void consultar(List<Pedido> lote) {
+        Set<String> ids = new LinkedHashSet<>();
+        lote.forEach(pedido -> ids.add(pedido.id()));
+        dao.findAllById(ids)
+                .collectMap(Producto::getId)
+                .doFinally(signal -> terminado())
+                .subscribe(encontrados -> lote.forEach(pedido -> pedido.resultado().complete(encontrados.get(pedido.id()))),
+                        e -> lote.forEach(pedido -> pedido.resultado().completeExceptionally(e)));
+    }
+
+    private void terminado() {
+        List<Pedido> lote = null;
+        synchronized (lock) {
+            enCurso--;
+            if (!pendientes.isEmpty() && enCurso < concurrency) {
+                lote = tomarPendientes();
+            }
+        }
+        if (lote != null) {
+            consultar(lote);
+        }
+    }
+}
@@ -0,0 +1,238 @@
+package com.example.springbootwebfluxapirest.models.services;
+
+import com.example.springbootwebfluxapirest.models.documents.Categoria;
+import com.example.springbootwebfluxapirest.models.documents.Producto;
+import com.github.benmanes.caffeine.cache.AsyncCache;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+//Cache en memoria de productos por id, acotada por tamaño y tiempo de vida.
+//Si hay un SharedProductoCache se consulta antes de ir a Mongo y se mantiene en las escrituras.
+//Cada lectura entrega una copia: quien la modifica antes de guardar no cambia lo que ven los demas.
+@Component
+public class ProductoCache {
+
+    private static final Logger log = LoggerFactory.getLogger(ProductoCache.class);
+
+    private final AsyncCache<String, Producto> cache;
+
+    //Null si no hay nivel compartido
+    private final SharedProductoCache shared;
+
+    private final LongAdder sharedHits = new LongAdder();
+    private final LongAdder sharedMisses = new LongAdder();
+
+    //Cada invalidacion toma un numero de la secuencia y lo anota para su id. Una carga que empezo
+    //antes de invalidar ese id no devuelve al nivel compartido lo que leyo, si no el producto
+    //borrado reaparece hasta que expire. Las cargas de otros ids no se ven afectadas.
+    //Las anotaciones duran lo que el ttl local, ninguna carga dura tanto.
+    private final AtomicLong secuencia = new AtomicLong();
+    private final Cache<String, Long> invalidados;
+    private volatile long invalidadoTodo;
+
+    //Sin el feed de Mongo un nodo no se entera de lo que escriben los demas: seguiria sirviendo
+    //su copia local mientras el nivel compartido ya tiene la nueva, no se permite arrancar asi
+    @Autowired
+    public ProductoCache(@Value("${config.productos.cache.maximum-size}") long maximumSize,
+                         @Value("${config.productos.cache.ttl}") Duration ttl,
+                         ObjectProvider<SharedProductoCache> shared,
+                         @Value("${config.productos.changes.source}") String changesSource) {
+        this(maximumSize, ttl, shared.getIfAvailable());
+        if (this.shared != null && !this.shared.isInProcess() && !"mongo".equals(changesSource)) {
+            throw new IllegalStateException("Un nivel de cache compartido entre nodos requiere config.productos.changes.source=mongo");
+        }
+    }
+
+    public ProductoCache(long maximumSize, Duration ttl) {
+        this(maximumSize, ttl, (SharedProductoCache) null);
+    }
+
+    public ProductoCache(long maximumSize, Duration ttl, SharedProductoCache shared) {
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfterWrite(ttl)
+                .recordStats()
+                .buildAsync();
+        this.invalidados = Caffeine.newBuilder()
+                .expireAfterWrite(ttl)
+                .build();
+        this.shared = shared;
+    }
+
+    //Las lecturas concurrentes de un mismo id comparten la misma consulta a Mongo.
+    //Si el producto no existe el futuro termina en null y Caffeine no guarda la entrada.
+    public Mono<Producto> get(String id, Function<String, Mono<Producto>> loader) {
+        return Mono.fromFuture(() -> cache.get(id, (key, executor) -> loadShared(key, loader).toFuture()), true)
+                .map(ProductoCache::copia);
+    }
+
+    //Solo los ids que faltan en la cache llegan al loader, los que no existen no se guardan
+    public Mono<Map<String, Producto>> getAll(Collection<String> ids, Function<Set<? extends String>, Mono<Map<String, Producto>>> loader) {
+        return Mono.fromFuture(() -> cache.getAll(ids, (keys, executor) -> loadAllShared(keys, loader).toFuture()), true)
+                .map(encontrados -> {
+                    Map<String, Producto> copias = new HashMap<>(encontrados.size());
+                    encontrados.forEach((id, producto) -> copias.put(id, copia(producto)));
+                    return copias;
+                });
+    }
+
+    public void put(Producto producto) {
+        Producto copia = copia(producto);
+        cache.put(copia.getId(), CompletableFuture.completedFuture(copia));
+        if (shared != null) {
+            putShared(copia);
+        }
+    }
+
+    public void invalidate(String id) {
+        if (id != null) {
+            marcar(id);
+            cache.synchronous().invalidate(id);
+            if (shared != null) {
+                shared.evict(id).subscribe(null, e -> log.warn("No se pudo invalidar el producto " + id + " en la cache compartida", e));
+            }
+        }
+    }
+
+    public void invalidateAll() {
+        invalidadoTodo = secuencia.incrementAndGet();
+        cache.synchronous().invalidateAll();
+        if (shared != null) {
+            shared.evictAll().subscribe(null, e -> log.warn("No se pudo vaciar la cache compartida", e));
+        }
+    }
+
+    //Cambio hecho por otro nodo: ese nodo ya actualizo el nivel compartido, aqui solo se descarta la copia local.
+    //Si la copia local ya tiene esa version el cambio lo hizo este mismo nodo y se conserva.
+    public void invalidateLocal(String id, Long version) {
+        CompletableFuture<Producto> actual = cache.getIfPresent(id);
+        if (version != null && actual != null && actual.isDone() && !actual.isCompletedExceptionally()) {
+            Producto producto = actual.join();
+            if (producto != null && version.equals(producto.getVersion())) {
+                return;
+            }
+        }
+        marcar(id);
+        cache.synchronous().invalidate(id);
+    }
+
+    public void invalidateAllLocal() {
+        invalidadoTodo = secuencia.incrementAndGet();
+        cache.synchronous().invalidateAll();
+    }
+
+    public CacheStats stats() {
+        return cache.synchronous().stats();
+    }
+
+    public long size() {
+        return cache.synchronous().estimatedSize();
+    }
+
+    public long sharedHits() {
+        return sharedHits.sum();
+    }
+
+    public long sharedMisses() {
+        return sharedMisses.sum();
+    }
+
+    //Un fallo del nivel compartido cuenta como fallo de cache, la lectura sigue en Mongo
+    private Mono<Producto> loadShared(String id, Function<String, Mono<Producto>> loader) {
+        if (shared == null) {
+            return loader.apply(id);
+        }
+        long inicio = secuencia.get();
+        return shared.get(id)
+                .onErrorResume(e -> {
+                    log.warn("No se pudo leer el producto " + id + " de la cache compartida", e);
+                    return Mono.empty();
+                })
+                .doOnNext(p -> sharedHits.increment())
+                .switchIfEmpty(Mono.defer(() -> {
+                    sharedMisses.increment();
+                    return loader.apply(id).doOnNext(producto -> putShared(producto, inicio));
+                }));
+    }
+
+    private Mono<Map<String, Producto>> loadAllShared(Set<? extends String> ids, Function<Set<? extends String>, Mono<Map<String, Producto>>> loader) {
+        if (shared == null) {
+            return loader.apply(ids);
+        }
+        long inicio = secuencia.get();
+        return shared.getAll(new HashSet<>(ids))
+                .onErrorResume(e -> {
+                    log.warn("No se pudieron leer productos de la cache compartida", e);
+                    return Mono.just(Map.of());
+                })
+                .flatMap(encontrados -> {
+                    sharedHits.add(encontrados.size());
+                    Set<String> faltantes = new HashSet<>(ids);
+                    faltantes.removeAll(encontrados.keySet());
+                    sharedMisses.add(faltantes.size());
+                    if (faltantes.isEmpty()) {
+                        return Mono.just(encontrados);
+                    }
+                    return loader.apply(faltantes).map(cargados -> {
+                        cargados.values().forEach(producto -> putShared(producto, inicio));
+                        Map<String, Producto> todos = new HashMap<>(encontrados);
+                        todos.putAll(cargados);
+                        return todos;
+                    });
+                });
+    }
+
+    static Producto copia(Producto producto) {
+        Producto copia = new Producto();
+        copia.setId(producto.getId());
+        copia.setNombre(producto.getNombre());
+        copia.setPrecio(producto.getPrecio());
+        copia.setCreateAt(producto.getCreateAt() == null ? null : new Date(producto.getCreateAt().getTime()));
+        copia.setUpdateAt(producto.getUpdateAt() == null ? null : new Date(producto.getUpdateAt().getTime()));
+        if (producto.getCategoria() != null) {
+            Categoria categoria = new Categoria(producto.getCategoria().getNombre());
+            categoria.setId(producto.getCategoria().getId());
+            copia.setCategoria(categoria);
+        }
+        copia.setFoto(producto.getFoto());
+        copia.setFotoHash(producto.getFotoHash());
+        copia.setThumbnails(producto.getThumbnails() == null ? null : new HashMap<>(producto.getThumbnails()));
+        copia.setVersion(producto.getVersion());
+        return copia;
+    }
+
+    private void marcar(String id) {
+        invalidados.put(id, secuencia.incrementAndGet());
+    }
+
+    private void putShared(Producto producto, long inicio) {
+        Long invalidado = invalidados.getIfPresent(producto.getId());
+        if (invalidadoTodo <= inicio && (invalidado == null || invalidado <= inicio)) {
+            putShared(producto);
+        }
+    }
+
+    private void putShared(Producto producto) {
+        shared.put(producto).subscribe(null, e -> log.warn("No se pudo guardar el producto " + producto.getId() + " en la cache compartida", e));
+    }
+}
@@ -0,0 +1,57 @@
+package com.example.springbootwebfluxapirest.models.services;
+
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import reactor.core.Disposable;
+import reactor.util.retry.Retry;
+
+import java.time.Duration;
+
+//Con el feed de Mongo cada nodo ve las escrituras de los demas, descarta su copia local y cuenta
+//el cambio en la version de la coleccion. Con el feed local no hace falta, el unico nodo ya lo hace al escribir.
+@Component
+@ConditionalOnProperty(name = "config.productos.changes.source", havingValue = "mongo")
+public class ProductoCacheInvalidator {
+
+    private static final Logger log = LoggerFactory.getLogger(ProductoCacheInvalidator.class);
+
+    private final ProductoChangeFeed feed;
+    private final ProductoCache cache;
+    private final ProductoCollectionVersion versionColeccion;
+    private Disposable subscription;
+
+    public ProductoCacheInvalidator(ProductoChangeFeed feed, ProductoCache cache, ProductoCollectionVersion versionColeccion) {
+        this.feed = feed;
+        this.cache = cache;
+        this.versionColeccion = versionColeccion;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        subscription = feed.changes(null, null)
+                .retryWhen(Retry.backoff(Long.MAX_VALUE, Duration.ofSeconds(1))
+                        .maxBackoff(Duration.ofSeconds(30))
+                        //Los cambios perdidos durante el corte no se pueden saber, se vacia la cache local
+                        .doBeforeRetry(signal -> {
+                            log.warn("Se corto el feed de cambios, se vacia la cache local", signal.failure());
+                            cache.invalidateAllLocal();
+                            versionColeccion.increment();
+                        }))
+                .subscribe(change -> {
+                    cache.invalidateLocal(change.getId(), change.getProducto() != null ? change.getProducto().getVersion() : null);
+                    versionColeccion.increment();
+                });
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (subscription != null) {
+            subscription.dispose();
+        }
+    }
+}
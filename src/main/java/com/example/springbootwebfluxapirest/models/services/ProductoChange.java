@@ -0,0 +1,46 @@
+package com.example.springbootwebfluxapirest.models.services;
+
+import com.example.springbootwebfluxapirest.models.documents.Producto;
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+
+//Cambio sobre un producto, se publica como evento de Spring desde ProductoServiceImpl
+@Getter
+@NoArgsConstructor
+@AllArgsConstructor
+public class ProductoChange {
+
+	public enum Operacion { INSERT, UPDATE, DELETE }
+
+	private Operacion operacion;
+
+	private String id;
+
+	private String categoriaId;
+
+	//Null en los borrados
+	private Producto producto;
+
+	//Lo asigna el feed, permite retomar el stream desde este cambio
+	private String token;
+
+	//Categoria que tenia el producto antes de un UPDATE, null si no se sabe.
+	//Es para los listeners de este nodo, no sale en el stream.
+	@JsonIgnore
+	private String categoriaAnteriorId;
+
+	public ProductoChange(Operacion operacion, Producto producto) {
+		this(operacion, producto, null);
+	}
+
+	public ProductoChange(Operacion operacion, Producto producto, String categoriaAnteriorId) {
+		this(operacion, producto.getId(), producto.getCategoria() != null ? producto.getCategoria().getId() : null,
+				operacion == Operacion.DELETE ? null : producto, null, categoriaAnteriorId);
+	}
+
+	public ProductoChange withToken(String token) {
+		return new ProductoChange(operacion, id, categoriaId, producto, token, categoriaAnteriorId);
+	}
+}
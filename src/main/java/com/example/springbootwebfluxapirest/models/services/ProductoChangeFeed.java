@@ -0,0 +1,9 @@
+package com.example.springbootwebfluxapirest.models.services;
+
+import reactor.core.publisher.Flux;
+
+public interface ProductoChangeFeed {
+
+	//Cambios posteriores al token, o desde ahora si es null. categoriaId null no filtra.
+	Flux<ProductoChange> changes(String resumeToken, String categoriaId);
+}
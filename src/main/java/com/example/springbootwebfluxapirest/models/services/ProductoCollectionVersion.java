@@ -0,0 +1,32 @@
+package com.example.springbootwebfluxapirest.models.services;
+
+import org.bson.types.ObjectId;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+//Version de la coleccion de productos para el ETag de los listados, sin ir a Mongo: un contador
+//en memoria que suma uno con cada cambio, los de este nodo por evento y los de los demas por el
+//feed de Mongo (ProductoCacheInvalidator). La epoca distingue cada arranque y cada nodo, dos
+//contadores con el mismo valor en procesos distintos no describen los mismos datos.
+@Component
+public class ProductoCollectionVersion {
+
+    private final String epoca = new ObjectId().toHexString();
+    private final AtomicLong cambios = new AtomicLong();
+
+    public String current() {
+        return epoca + "." + cambios.get();
+    }
+
+    //Se llama despues de que la escritura quedo aplicada, el ETag nunca es mas nuevo que los datos
+    public void increment() {
+        cambios.incrementAndGet();
+    }
+
+    @EventListener
+    public void onChange(ProductoChange change) {
+        increment();
+    }
+}
@@ -0,0 +1,108 @@
+package com.example.springbootwebfluxapirest.models.services;
+
+import com.example.springbootwebfluxapirest.models.documents.Producto;
+import org.springframework.data.mongodb.core.query.Query;
+
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+//Campos pedidos con fields=nombre,precio. Se traducen a una proyeccion de Mongo y la respuesta
+//proyectada solo lleva esos campos (vista); sin fields= se envia el Producto completo, nulos incluidos.
+public final class ProductoFields {
+
+	//En el orden de Producto, asi la vista lista los campos igual que la respuesta completa
+	private static final List<String> ORDEN = List.of("id", "nombre", "precio", "createAt", "updateAt",
+			"categoria", "foto", "fotoHash", "thumbnails", "version");
+
+	private static final Set<String> PERMITIDOS = Set.copyOf(ORDEN);
+
+	public static final ProductoFields ALL = new ProductoFields(Set.of());
+
+	private final Set<String> campos;
+
+	private ProductoFields(Set<String> campos) {
+		this.campos = campos;
+	}
+
+	public static ProductoFields parse(String fields) {
+		if (fields == null || fields.isBlank()) {
+			return ALL;
+		}
+		Set<String> campos = new LinkedHashSet<>();
+		for (String campo : fields.split(",")) {
+			campo = campo.trim();
+			if (!PERMITIDOS.contains(campo)) {
+				throw new IllegalArgumentException("Campo desconocido: " + campo);
+			}
+			campos.add(campo);
+		}
+		//El id siempre viaja, lo necesitan la paginacion y los eventos SSE
+		campos.add("id");
+		return new ProductoFields(Set.copyOf(campos));
+	}
+
+	public boolean isAll() {
+		return campos.isEmpty();
+	}
+
+	public Query apply(Query query) {
+		if (!isAll()) {
+			query.fields().include(campos.toArray(String[]::new));
+		}
+		return query;
+	}
+
+	//Para los productos que ya estan en memoria, como los de la cache. No modifica el original.
+	public Producto copy(Producto producto) {
+		if (isAll()) {
+			return producto;
+		}
+		Producto copia = new Producto();
+		for (String campo : campos) {
+			switch (campo) {
+				case "id" -> copia.setId(producto.getId());
+				case "nombre" -> copia.setNombre(producto.getNombre());
+				case "precio" -> copia.setPrecio(producto.getPrecio());
+				case "createAt" -> copia.setCreateAt(producto.getCreateAt());
+				case "updateAt" -> copia.setUpdateAt(producto.getUpdateAt());
+				case "categoria" -> copia.setCategoria(producto.getCategoria());
+				case "foto" -> copia.setFoto(producto.getFoto());
+				case "fotoHash" -> copia.setFotoHash(producto.getFotoHash());
+				case "thumbnails" -> copia.setThumbnails(producto.getThumbnails());
+				case "version" -> copia.setVersion(producto.getVersion());
+				default -> throw new IllegalStateException(campo);
+			}
+		}
+		return copia;
+	}
+
+	//Lo que se serializa en JSON, CBOR y Smile cuando hay proyeccion: un campo pedido que es nulo se envia como null
+	public Map<String, Object> vista(Producto producto) {
+		Map<String, Object> vista = new LinkedHashMap<>();
+		for (String campo : ORDEN) {
+			if (campos.contains(campo)) {
+				vista.put(campo, valor(producto, campo));
+			}
+		}
+		return vista;
+	}
+
+	private static Object valor(Producto producto, String campo) {
+		return switch (campo) {
+			case "id" -> producto.getId();
+			case "nombre" -> producto.getNombre();
+			case "precio" -> producto.getPrecio();
+			case "createAt" -> producto.getCreateAt();
+			case "updateAt" -> producto.getUpdateAt();
+			case "categoria" -> producto.getCategoria();
+			case "foto" -> producto.getFoto();
+			case "fotoHash" -> producto.getFotoHash();
+			case "thumbnails" -> producto.getThumbnails();
+			case "version" -> producto.getVersion();
+			default -> throw new IllegalStateException(campo);
+		};
+	}
+}
@@ -0,0 +1,40 @@
+package com.example.springbootwebfluxapirest.models.services;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.data.domain.Sort;
+
+import java.util.Date;
+
+//Filtros de la busqueda de productos, todos opcionales
+@Getter
+@Setter
+public class ProductoSearch {
+
+	//Prefijo del nombre
+	private String nombre;
+
+	//Busqueda de texto sobre el nombre
+	private String texto;
+
+	private Double precioMin;
+
+	private Double precioMax;
+
+	private String categoriaId;
+
+	private Date desde;
+
+	private Date hasta;
+
+	private Sort sort = Sort.unsorted();
+
+	private int limit;
+
+	private ProductoFields fields = ProductoFields.ALL;
+
+	public boolean hasFilters() {
+		return nombre != null || texto != null || precioMin != null || precioMax != null
+				|| categoriaId != null || desde != null || hasta != null;
+	}
+}
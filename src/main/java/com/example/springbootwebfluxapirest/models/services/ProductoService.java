@@ -2,22 +2,52 @@ package com.example.springbootwebfluxapirest.models.services;
 
 import com.example.springbootwebfluxapirest.models.documents.Categoria;
 import com.example.springbootwebfluxapirest.models.documents.Producto;
+import org.springframework.core.io.buffer.DataBuffer;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
+import java.util.List;
+
 public interface ProductoService {
 	
 	Flux<Producto> findAll();
+
+	Flux<Producto> findAllAfter(String after, int limit, ProductoFields fields);
+
+	Flux<Producto> streamAll(String after, ProductoFields fields);
+
+	Flux<Producto> search(ProductoSearch search);
 	
 	Flux<Producto> findAllConNombreUpperCase();
 	
 	Flux<Producto> findAllConNombreUpperCaseRepeat();
 	
 	Mono<Producto> findById(String id);
+
+	Flux<Producto> findAllById(List<String> ids);
+
+	//Cambia con cada alta, edicion o borrado de productos, sin recorrer la coleccion
+	Mono<String> collectionVersion();
 	
 	Mono<Producto> save(Producto producto);
+
+	//Aplica solo los campos no nulos de cambios. Con expectedVersion distinta a la guardada
+	//termina en OptimisticLockingFailureException, si el producto no existe termina vacio.
+	Mono<Producto> update(String id, Producto cambios, Long expectedVersion);
 	
-	Mono<Void> delete(Producto producto);
+	Mono<Producto> saveWithPhoto(Producto producto, String filename, Flux<DataBuffer> content);
+
+	//true si habia un producto con ese id
+	Mono<Boolean> deleteById(String id);
+
+	Mono<Boolean> existsById(String id);
+
+	//Devuelven la cantidad de productos borrados
+	Mono<Long> deleteAll(List<String> ids);
+
+	Mono<Long> deleteAll(ProductoSearch filtro);
+
+	Mono<List<BulkItemError>> saveAll(List<Producto> productos);
 	
 	Flux<Categoria> findAllCategoria();
 	
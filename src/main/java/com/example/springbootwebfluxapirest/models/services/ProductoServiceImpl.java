@@ -1,47 +1,470 @@
 package com.example.springbootwebfluxapirest.models.services;
 
-import com.example.springbootwebfluxapirest.models.dao.CategoriaDao;
+import com.example.springbootwebfluxapirest.models.dao.DeadlineExceededException;
+import com.example.springbootwebfluxapirest.models.dao.MongoClientProperties;
+import com.example.springbootwebfluxapirest.models.dao.MongoDeadlines;
 import com.example.springbootwebfluxapirest.models.dao.ProductoDao;
 import com.example.springbootwebfluxapirest.models.documents.Categoria;
 import com.example.springbootwebfluxapirest.models.documents.Producto;
+import com.example.springbootwebfluxapirest.models.storage.PhotoStorage;
+import com.mongodb.MongoBulkWriteException;
+import com.mongodb.ReadPreference;
+import com.mongodb.bulk.BulkWriteError;
+import com.mongodb.client.result.DeleteResult;
+import org.bson.Document;
+import org.bson.types.ObjectId;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.ReactiveBulkOperations;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.TextCriteria;
+import org.springframework.data.mongodb.core.query.TextQuery;
+import org.springframework.data.mongodb.core.query.Update;
 import org.springframework.stereotype.Service;
 
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+
+import static org.springframework.data.mongodb.core.query.Criteria.where;
+import static org.springframework.data.mongodb.core.query.Query.query;
+
 @Service
 public class ProductoServiceImpl implements ProductoService{
 
+	private static final Logger log = LoggerFactory.getLogger(ProductoServiceImpl.class);
+
+	//Campos que el upsert del bulk no copia del documento enviado
+	private static final Set<String> CAMPOS_CONTROL = Set.of("_id", "_class", "version");
+
+	private static final String CAMPO_CREACION = "createAt";
+
+	private static final int DUPLICATE_KEY = 11000;
+
 	@Autowired
 	private ProductoDao dao;
 	
 	@Autowired
-	private CategoriaDao categoriaDao;
+	private CategoriaRegistry categorias;
+
+	@Autowired
+	private ReactiveMongoTemplate mongoTemplate;
+
+	@Autowired
+	private ProductoCache cache;
+
+	@Autowired
+	private ProductoBatchLoader batchLoader;
+
+	@Autowired
+	private PhotoStorage photoStorage;
+
+	@Autowired
+	private ThumbnailService thumbnailService;
+
+	@Autowired
+	private ApplicationEventPublisher events;
+
+	@Autowired
+	private MongoDeadlines deadlines;
+
+	@Autowired
+	private MongoClientProperties mongoProperties;
+
+	@Autowired
+	private ProductoCollectionVersion versionColeccion;
+
+	@Value("${config.productos.stream.batch-size}")
+	private int streamBatchSize;
+
+	@Value("${config.productos.delete.window-size}")
+	private int deleteWindowSize;
 	
 	@Override
 	public Flux<Producto> findAll() {
-		return dao.findAll();
+		return deadlines.read(dao.findAll());
+	}
+
+	//Las paginas siguen en la preferencia del cliente: su ETag sale de collectionVersion, que cuenta
+	//escrituras confirmadas por el primario, y una pagina de un secundario atrasado quedaria con un ETag mas nuevo
+	@Override
+	public Flux<Producto> findAllAfter(String after, int limit, ProductoFields fields) {
+		if (!fields.isAll()) {
+			return deadlines.read(mongoTemplate.find(fields.apply(afterQuery(after).limit(limit)), Producto.class));
+		}
+		PageRequest page = PageRequest.of(0, limit, Sort.by("id"));
+		return deadlines.read(after == null ? dao.findAllBy(page) : dao.findByIdGreaterThan(after, page));
+	}
+
+	@Override
+	public Flux<Producto> streamAll(String after, ProductoFields fields) {
+		//El driver pide los lotes al ritmo de la demanda del cliente
+		Query query = afterQuery(after).cursorBatchSize(streamBatchSize);
+		return deadlines.stream(mongoTemplate.find(listQuery(fields.apply(query)), Producto.class));
+	}
+
+	//Busquedas y streaming pueden leer de un secundario, no tienen validadores que comparar con el primario
+	private Query listQuery(Query query) {
+		ReadPreference readPreference = mongoProperties.listReadPreference();
+		return readPreference == null ? query : query.withReadPreference(readPreference);
+	}
+
+	private static Query afterQuery(String after) {
+		Query query = new Query().with(Sort.by("id"));
+		if (after != null) {
+			query.addCriteria(where("id").gt(after));
+		}
+		return query;
+	}
+
+	@Override
+	public Flux<Producto> search(ProductoSearch search) {
+		Query query = filterQuery(search);
+		if (query instanceof TextQuery textQuery) {
+			textQuery.sortByScore();
+		}
+		query.with(search.getSort()).limit(search.getLimit());
+		if (search.getFields().isAll()) {
+			//La version permite editar con If-Match a partir de un resultado
+			query.fields().include("id", "nombre", "precio", "createAt", "categoria", "foto", "thumbnails", "version");
+		} else {
+			search.getFields().apply(query);
+		}
+		//Con maxTime el servidor tambien abandona la consulta cuando vence el plazo
+		query.maxTime(mongoProperties.getTimeouts().getRead());
+		return deadlines.read(mongoTemplate.find(listQuery(query), Producto.class));
+	}
+
+	private static Query filterQuery(ProductoSearch search) {
+		Query query = search.getTexto() == null ? new Query()
+				: TextQuery.queryText(TextCriteria.forDefaultLanguage().matching(search.getTexto()));
+		if (search.getNombre() != null) {
+			//Un prefijo anclado y sin metacaracteres puede recorrer el indice de nombre
+			query.addCriteria(where("nombre").regex("^" + escapeRegex(search.getNombre())));
+		}
+		if (search.getPrecioMin() != null || search.getPrecioMax() != null) {
+			Criteria precio = where("precio");
+			if (search.getPrecioMin() != null) {
+				precio.gte(search.getPrecioMin());
+			}
+			if (search.getPrecioMax() != null) {
+				precio.lte(search.getPrecioMax());
+			}
+			query.addCriteria(precio);
+		}
+		if (search.getCategoriaId() != null) {
+			query.addCriteria(where("categoria.id").is(search.getCategoriaId()));
+		}
+		if (search.getDesde() != null || search.getHasta() != null) {
+			Criteria createAt = where("createAt");
+			if (search.getDesde() != null) {
+				createAt.gte(search.getDesde());
+			}
+			if (search.getHasta() != null) {
+				createAt.lt(search.getHasta());
+			}
+			query.addCriteria(createAt);
+		}
+		return query;
+	}
+
+	private static String escapeRegex(String value) {
+		StringBuilder escaped = new StringBuilder(value.length());
+		for (char c : value.toCharArray()) {
+			if ("\\^$.|?*+()[]{}".indexOf(c) >= 0) {
+				escaped.append('\\');
+			}
+			escaped.append(c);
+		}
+		return escaped.toString();
 	}
 
 	@Override
 	public Mono<Producto> findById(String id) {
-		return dao.findById(id);
+		return deadlines.read(cache.get(id, batchLoader::load));
+	}
+
+	@Override
+	public Flux<Producto> findAllById(List<String> ids) {
+		//Se respeta el orden pedido, los ids inexistentes no aparecen
+		return deadlines.read(cache.getAll(ids, batchLoader::loadAll))
+				.flatMapIterable(encontrados -> ids.stream()
+						.distinct()
+						.map(encontrados::get)
+						.filter(Objects::nonNull)
+						.toList());
+	}
+
+	@Override
+	public Mono<String> collectionVersion() {
+		//Contador en memoria, cada cambio publicado lo incrementa despues de aplicarse
+		return Mono.fromSupplier(versionColeccion::current);
 	}
 
 	@Override
 	public Mono<Producto> save(Producto producto) {
-		return dao.save(producto);
+		ProductoChange.Operacion operacion = producto.getId() == null ? ProductoChange.Operacion.INSERT : ProductoChange.Operacion.UPDATE;
+		producto.setUpdateAt(new Date());
+		return deadlines.write(dao.save(producto))
+				.doOnNext(cache::put)
+				.doOnNext(saved -> events.publishEvent(new ProductoChange(operacion, saved)))
+				.doOnError(e -> cache.invalidate(producto.getId()));
 	}
 
 	@Override
-	public Mono<Void> delete(Producto producto) {
-		return dao.delete(producto);
+	public Mono<Producto> update(String id, Producto cambios, Long expectedVersion) {
+		Query query = query(where("id").is(id));
+		if (expectedVersion != null) {
+			query.addCriteria(where("version").is(expectedVersion));
+		}
+		//Una sola ida a Mongo, el template suma 1 a version dentro del mismo $set
+		Update update = new Update();
+		if (cambios.getNombre() != null) {
+			update.set("nombre", cambios.getNombre());
+		}
+		if (cambios.getPrecio() != null) {
+			update.set("precio", cambios.getPrecio());
+		}
+		if (cambios.getCategoria() != null) {
+			update.set("categoria", cambios.getCategoria());
+		}
+		Date updateAt = new Date();
+		update.set("updateAt", updateAt);
+		//Se pide el documento anterior: trae en la misma operacion la categoria de la que sale el producto,
+		//las stats tienen que corregir las dos. El nuevo estado se arma con los cambios aplicados.
+		return deadlines.write(mongoTemplate.findAndModify(query, update, FindAndModifyOptions.options().returnNew(false), Producto.class))
+				.map(anterior -> {
+					String categoriaAnterior = anterior.getCategoria() != null ? anterior.getCategoria().getId() : null;
+					aplicar(anterior, cambios, updateAt);
+					return new ProductoChange(ProductoChange.Operacion.UPDATE, anterior, categoriaAnterior);
+				})
+				.doOnNext(change -> cache.put(change.getProducto()))
+				.doOnNext(events::publishEvent)
+				.map(ProductoChange::getProducto)
+				//Sin coincidencia no se sabe si falta el producto o cambio la version
+				.switchIfEmpty(Mono.defer(() -> expectedVersion == null ? Mono.empty() : deadlines.read(dao.existsById(id))
+						.flatMap(existe -> existe
+								? Mono.error(new OptimisticLockingFailureException("El producto " + id + " ya no esta en la version " + expectedVersion))
+								: Mono.empty())))
+				.doOnError(e -> cache.invalidate(id));
+	}
+
+	//Lo mismo que el $set de update, y la version que suma el template
+	private static void aplicar(Producto producto, Producto cambios, Date updateAt) {
+		if (cambios.getNombre() != null) {
+			producto.setNombre(cambios.getNombre());
+		}
+		if (cambios.getPrecio() != null) {
+			producto.setPrecio(cambios.getPrecio());
+		}
+		if (cambios.getCategoria() != null) {
+			producto.setCategoria(cambios.getCategoria());
+		}
+		producto.setUpdateAt(updateAt);
+		producto.setVersion(producto.getVersion() == null ? 1L : producto.getVersion() + 1);
+	}
+
+	@Override
+	public Mono<Producto> saveWithPhoto(Producto producto, String filename, Flux<DataBuffer> content) {
+		String anterior = producto.getFoto();
+		Map<String, String> miniaturas = producto.getThumbnails();
+		return photoStorage.store(filename, content)
+				.flatMap(foto -> {
+					producto.setFoto(foto.getKey());
+					producto.setFotoHash(foto.getHash());
+					producto.setThumbnails(null);
+					return save(producto)
+							.onErrorResume(e -> {
+								//Con el plazo vencido el documento puede haberse guardado con la foto nueva, borrarla lo dejaria roto
+								if (e instanceof DeadlineExceededException) {
+									log.warn("No se sabe si el producto " + producto.getId() + " quedo con la foto " + foto.getKey()
+											+ ", se conserva");
+									return Mono.error(e);
+								}
+								return photoStorage.delete(foto.getKey()).then(Mono.error(e));
+							});
+				})
+				.doOnNext(thumbnailService::submit)
+				.flatMap(saved -> {
+					if (anterior == null) {
+						return Mono.just(saved);
+					}
+					return photoStorage.delete(anterior)
+							.then(miniaturas == null ? Mono.empty() : thumbnailService.delete(miniaturas.values()))
+							.onErrorResume(e -> {
+								log.warn("No se pudo borrar la foto anterior " + anterior, e);
+								return Mono.empty();
+							})
+							.thenReturn(saved);
+				});
+	}
+
+	@Override
+	public Mono<Boolean> deleteById(String id) {
+		//Una sola operacion, de lo borrado solo se trae la categoria para el evento
+		Query query = query(where("id").is(id));
+		query.fields().include("categoria");
+		return deadlines.write(mongoTemplate.findAndRemove(query, Producto.class))
+				.doOnNext(producto -> events.publishEvent(new ProductoChange(ProductoChange.Operacion.DELETE, producto)))
+				.hasElement()
+				.doFinally(signal -> cache.invalidate(id));
+	}
+
+	@Override
+	public Mono<Boolean> existsById(String id) {
+		return deadlines.read(dao.existsById(id));
+	}
+
+	@Override
+	public Mono<Long> deleteAll(List<String> ids) {
+		return Flux.fromIterable(ids)
+				.buffer(deleteWindowSize)
+				.concatMap(ventana -> deleteMatching(() -> query(where("id").in(ventana))))
+				.reduce(0L, Long::sum);
+	}
+
+	@Override
+	public Mono<Long> deleteAll(ProductoSearch filtro) {
+		return deleteMatching(() -> filterQuery(filtro));
+	}
+
+	//Se leen solo id y categoria (para los eventos) y se borra por ventanas: el filtro otra vez y ademas id $in.
+	//Un producto que deja de cumplir el filtro entre la lectura y el borrado no se borra.
+	private Mono<Long> deleteMatching(Supplier<Query> filtro) {
+		Query query = filtro.get();
+		query.fields().include("categoria");
+		return deadlines.read(mongoTemplate.find(query.cursorBatchSize(deleteWindowSize), Producto.class))
+				.buffer(deleteWindowSize)
+				.concatMap(productos -> {
+					List<String> ids = productos.stream().map(Producto::getId).toList();
+					//$and para no chocar con un filtro que ya tenga criterio sobre id
+					Query borrar = filtro.get().addCriteria(new Criteria().andOperator(where("id").in(ids)));
+					return deadlines.write(mongoTemplate.remove(borrar, Producto.class))
+							.flatMap(result -> borrados(productos, result.getDeletedCount())
+									.doOnNext(borrados -> borrados.forEach(p -> events.publishEvent(new ProductoChange(ProductoChange.Operacion.DELETE, p))))
+									.thenReturn(result.getDeletedCount()))
+							.doFinally(signal -> ids.forEach(cache::invalidate));
+				})
+				.reduce(0L, Long::sum);
+	}
+
+	//Si se borraron menos que los leidos, los que siguen en la coleccion son los que dejaron de cumplir el filtro
+	private Mono<List<Producto>> borrados(List<Producto> productos, long cantidad) {
+		if (cantidad == productos.size()) {
+			return Mono.just(productos);
+		}
+		Query quedan = query(where("id").in(productos.stream().map(Producto::getId).toList()));
+		quedan.fields().include("id");
+		return deadlines.read(mongoTemplate.find(quedan, Producto.class))
+				.map(Producto::getId)
+				.collect(Collectors.toSet())
+				.map(existentes -> productos.stream().filter(p -> !existentes.contains(p.getId())).toList());
+	}
+
+	@Override
+	public Mono<List<BulkItemError>> saveAll(List<Producto> productos) {
+		if (productos.isEmpty()) {
+			return Mono.just(List.of());
+		}
+		ReactiveBulkOperations bulk = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, Producto.class);
+		List<ProductoChange.Operacion> operaciones = new ArrayList<>(productos.size());
+		Date ahora = new Date();
+		for (Producto producto : productos) {
+			if (producto.getCreateAt() == null) {
+				producto.setCreateAt(ahora);
+			}
+			producto.setUpdateAt(ahora);
+			if (producto.getId() == null) {
+				//El id se asigna aqui para poder informar de cada producto insertado
+				producto.setId(new ObjectId().toHexString());
+				producto.setVersion(0L);
+				bulk.insert(producto);
+				operaciones.add(ProductoChange.Operacion.INSERT);
+			} else {
+				bulk.upsert(versionQuery(producto), versionUpdate(producto));
+				operaciones.add(ProductoChange.Operacion.UPDATE);
+			}
+		}
+		//Con errores parciales el resto del lote se aplico igual
+		return deadlines.write(bulk.execute())
+				.map(result -> List.<BulkItemError>of())
+				.onErrorResume(e -> bulkWriteException(e) != null, e -> Mono.just(bulkWriteException(e).getWriteErrors().stream()
+						.map(error -> new BulkItemError(error.getIndex(), productos.get(error.getIndex()).getId(), bulkErrorMessage(error, productos.get(error.getIndex()))))
+						.toList()))
+				.doOnNext(errores -> {
+					Set<Long> fallidos = errores.stream().map(BulkItemError::getIndice).collect(Collectors.toSet());
+					for (int i = 0; i < productos.size(); i++) {
+						if (!fallidos.contains((long) i)) {
+							events.publishEvent(new ProductoChange(operaciones.get(i), productos.get(i)));
+						}
+					}
+				})
+				.doFinally(signal -> productos.forEach(p -> cache.invalidate(p.getId())));
+	}
+
+	//Las operaciones bulk no pasan por el versionado de Spring Data, se filtra e incrementa a mano
+	private static Query versionQuery(Producto producto) {
+		Query query = query(where("id").is(producto.getId()));
+		if (producto.getVersion() != null) {
+			query.addCriteria(where("version").is(producto.getVersion()));
+		}
+		return query;
+	}
+
+	//createAt solo se escribe si el upsert inserta: la fecha de un producto existente no se pisa
+	//aunque el lote (o la repeticion del journal) traiga otra
+	private Update versionUpdate(Producto producto) {
+		Document documento = new Document();
+		mongoTemplate.getConverter().write(producto, documento);
+		Update update = new Update();
+		documento.forEach((campo, valor) -> {
+			if (CAMPO_CREACION.equals(campo)) {
+				update.setOnInsert(campo, valor);
+			} else if (!CAMPOS_CONTROL.contains(campo)) {
+				update.set(campo, valor);
+			}
+		});
+		return update.inc("version", 1);
+	}
+
+	//Con version el upsert que no encuentra el documento intenta insertar el mismo _id
+	private static String bulkErrorMessage(BulkWriteError error, Producto producto) {
+		if (error.getCode() == DUPLICATE_KEY && producto.getVersion() != null) {
+			return "El producto ya no esta en la version " + producto.getVersion();
+		}
+		return error.getMessage();
+	}
+
+	//El traductor de excepciones de Spring envuelve el error original del driver
+	private static MongoBulkWriteException bulkWriteException(Throwable e) {
+		while (e != null && !(e instanceof MongoBulkWriteException)) {
+			e = e.getCause();
+		}
+		return (MongoBulkWriteException) e;
 	}
 
 	@Override
 	public Flux<Producto> findAllConNombreUpperCase() {
-		return dao.findAll().map(producto -> {
+		return deadlines.read(dao.findAll()).map(producto -> {
 			producto.setNombre(producto.getNombre().toUpperCase());
 			return producto;
 		});
@@ -54,24 +477,24 @@ public class ProductoServiceImpl implements ProductoService{
 
 	@Override
 	public Flux<Categoria> findAllCategoria() {
-		return categoriaDao.findAll();
+		return categorias.findAll();
 	}
 
 	@Override
 	public Mono<Categoria> findCategoriaById(String id) {
-		return categoriaDao.findById(id);
+		return categorias.findById(id);
 	}
 
 	@Override
 	public Mono<Categoria> saveCategoria(Categoria categoria) {
-		return categoriaDao.save(categoria);
+		return categorias.save(categoria);
 	}
 
 	@Override
-	public Mono<Producto> findByNombre(String nombre){return dao.findByNombre(nombre);}
+	public Mono<Producto> findByNombre(String nombre){return deadlines.read(dao.findByNombre(nombre));}
 
 	@Override
 	public Mono<Categoria> findCategoriaByNombre(String nombre) {
-		return categoriaDao.findCategoriaByNombre(nombre);
+		return categorias.findByNombre(nombre);
 	}
 }
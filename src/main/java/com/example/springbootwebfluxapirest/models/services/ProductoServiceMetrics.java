@@ -0,0 +1,83 @@
+package com.example.springbootwebfluxapirest.models.services;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.aopalliance.intercept.MethodInterceptor;
+import org.aopalliance.intercept.MethodInvocation;
+import org.springframework.aop.framework.ProxyFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.stereotype.Component;
+import org.springframework.util.function.SingletonSupplier;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.SignalType;
+
+import java.util.function.Supplier;
+
+//Envuelve ProductoService y mide cada metodo desde la suscripcion hasta que el Mono o Flux termina.
+//@Timed no sirve aca, mediria solo el armado del publisher.
+@Component
+public class ProductoServiceMetrics implements BeanPostProcessor, MethodInterceptor {
+
+    static final String METRIC = "productos.service";
+
+    //Se resuelve en la primera llamada para no inicializar el MeterRegistry antes que sus post-processors
+    private final Supplier<MeterRegistry> registry;
+
+    @Autowired
+    public ProductoServiceMetrics(ObjectProvider<MeterRegistry> registry) {
+        this(registry::getObject);
+    }
+
+    ProductoServiceMetrics(Supplier<MeterRegistry> registry) {
+        this.registry = SingletonSupplier.of(registry);
+    }
+
+    @Override
+    public Object postProcessAfterInitialization(Object bean, String beanName) {
+        if (!(bean instanceof ProductoService)) {
+            return bean;
+        }
+        ProxyFactory factory = new ProxyFactory(bean);
+        factory.addAdvice(this);
+        return factory.getProxy();
+    }
+
+    @Override
+    public Object invoke(MethodInvocation invocation) throws Throwable {
+        Object result = invocation.proceed();
+        String method = invocation.getMethod().getName();
+        if (result instanceof Mono<?> mono) {
+            return Mono.defer(() -> {
+                Timer.Sample sample = Timer.start(registry.get());
+                return mono.doFinally(signal -> stop(sample, method, signal));
+            });
+        }
+        if (result instanceof Flux<?> flux) {
+            return Flux.defer(() -> {
+                Timer.Sample sample = Timer.start(registry.get());
+                return flux.doFinally(signal -> stop(sample, method, signal));
+            });
+        }
+        return result;
+    }
+
+    private void stop(Timer.Sample sample, String method, SignalType signal) {
+        sample.stop(Timer.builder(METRIC)
+                .description("Tiempo de los metodos de ProductoService")
+                .tag("method", method)
+                .tag("outcome", outcome(signal))
+                .register(registry.get()));
+    }
+
+    private static String outcome(SignalType signal) {
+        return switch (signal) {
+            case ON_COMPLETE -> "success";
+            case ON_ERROR -> "error";
+            case CANCEL -> "cancelled";
+            default -> "unknown";
+        };
+    }
+}
@@ -0,0 +1,246 @@
+package com.example.springbootwebfluxapirest.models.services;
+
+import com.example.springbootwebfluxapirest.models.documents.Producto;
+import com.github.benmanes.caffeine.cache.AsyncCacheLoader;
+import com.github.benmanes.caffeine.cache.AsyncLoadingCache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import org.bson.Document;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.aggregation.AggregationOperation;
+import org.springframework.data.mongodb.core.aggregation.DateOperators;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+
+import static org.springframework.data.mongodb.core.aggregation.Aggregation.*;
+import static org.springframework.data.mongodb.core.query.Criteria.where;
+
+//Estadisticas del catalogo calculadas en Mongo con pipelines de agregacion. Los resultados se
+//guardan poco tiempo y se recalculan en segundo plano mientras se sigue sirviendo el anterior.
+@Component
+public class ProductoStats {
+
+    private static final String TODAS = "todas";
+
+    private static final Map<String, String> FORMATOS = Map.of(
+            "dia", "%Y-%m-%d",
+            "semana", "%G-W%V",
+            "mes", "%Y-%m",
+            "anio", "%Y");
+
+    private static final int MAX_BUCKETS = 100;
+
+    private record PreciosKey(List<Double> limites, int buckets) {
+    }
+
+    private record AltasKey(String unidad, String categoriaId) {
+    }
+
+    private final ReactiveMongoTemplate mongoTemplate;
+
+    //Categorias con cambios desde el ultimo calculo, solo esas se vuelven a agregar
+    private final Set<String> categoriasModificadas = ConcurrentHashMap.newKeySet();
+    private volatile boolean recalcularTodo;
+
+    private final AsyncLoadingCache<String, Map<String, CategoriaStats>> categorias;
+    private final AsyncLoadingCache<PreciosKey, List<PrecioBucket>> precios;
+    private final AsyncLoadingCache<AltasKey, List<PeriodoStats>> altas;
+
+    public ProductoStats(ReactiveMongoTemplate mongoTemplate,
+                         @Value("${config.productos.stats.refresh}") Duration refresh,
+                         @Value("${config.productos.stats.expire}") Duration expire) {
+        this.mongoTemplate = mongoTemplate;
+        this.categorias = builder(refresh, expire).buildAsync(new AsyncCacheLoader<>() {
+            @Override
+            public CompletableFuture<Map<String, CategoriaStats>> asyncLoad(String key, Executor executor) {
+                categoriasModificadas.clear();
+                recalcularTodo = false;
+                return categoriaStats(null).toFuture();
+            }
+
+            @Override
+            public CompletableFuture<Map<String, CategoriaStats>> asyncReload(String key, Map<String, CategoriaStats> anteriores,
+                                                                              Executor executor) {
+                if (recalcularTodo) {
+                    return asyncLoad(key, executor);
+                }
+                Set<String> ids = new HashSet<>();
+                for (Iterator<String> it = categoriasModificadas.iterator(); it.hasNext(); ) {
+                    ids.add(it.next());
+                    it.remove();
+                }
+                if (ids.isEmpty()) {
+                    return CompletableFuture.completedFuture(anteriores);
+                }
+                return categoriaStats(ids)
+                        .map(recalculadas -> {
+                            Map<String, CategoriaStats> merged = new HashMap<>(anteriores);
+                            merged.keySet().removeAll(ids);
+                            merged.putAll(recalculadas);
+                            return merged;
+                        })
+                        .doOnError(e -> categoriasModificadas.addAll(ids))
+                        .toFuture();
+            }
+        });
+        this.precios = builder(refresh, expire).buildAsync((key, executor) -> precioBuckets(key).toFuture());
+        this.altas = builder(refresh, expire).buildAsync((key, executor) -> periodos(key).toFuture());
+    }
+
+    private static Caffeine<Object, Object> builder(Duration refresh, Duration expire) {
+        return Caffeine.newBuilder()
+                .maximumSize(1000)
+                .refreshAfterWrite(refresh)
+                .expireAfterWrite(expire);
+    }
+
+    //Un producto que cambia de categoria tambien cambia las stats de la anterior. Si el UPDATE no
+    //dice cual era se recalculan todas: las recargas reinician la expiracion, no se puede esperar a que expire.
+    @EventListener
+    public void onChange(ProductoChange change) {
+        if (change.getCategoriaId() == null) {
+            recalcularTodo = true;
+            return;
+        }
+        categoriasModificadas.add(change.getCategoriaId());
+        if (change.getOperacion() == ProductoChange.Operacion.UPDATE) {
+            if (change.getCategoriaAnteriorId() == null) {
+                recalcularTodo = true;
+            } else {
+                categoriasModificadas.add(change.getCategoriaAnteriorId());
+            }
+        }
+    }
+
+    public Mono<List<CategoriaStats>> porCategoria() {
+        return Mono.fromFuture(() -> categorias.get(TODAS), true)
+                .map(stats -> stats.values().stream()
+                        .sorted(Comparator.comparing(CategoriaStats::getNombre, Comparator.nullsLast(Comparator.naturalOrder())))
+                        .toList());
+    }
+
+    //Con limites ascendentes se usan esos rangos, sin limites Mongo arma rangos parejos
+    public Mono<List<PrecioBucket>> precios(List<Double> limites, int buckets) {
+        if (limites.isEmpty() && (buckets < 1 || buckets > MAX_BUCKETS)) {
+            throw new IllegalArgumentException("buckets debe estar entre 1 y " + MAX_BUCKETS);
+        }
+        if (limites.size() == 1 || limites.size() > MAX_BUCKETS + 1) {
+            throw new IllegalArgumentException("Se requieren entre 2 y " + (MAX_BUCKETS + 1) + " limites");
+        }
+        for (int i = 1; i < limites.size(); i++) {
+            if (limites.get(i) <= limites.get(i - 1)) {
+                throw new IllegalArgumentException("Los limites deben ser ascendentes");
+            }
+        }
+        PreciosKey key = new PreciosKey(List.copyOf(limites), limites.isEmpty() ? buckets : 0);
+        return Mono.fromFuture(() -> precios.get(key), true);
+    }
+
+    public Mono<List<PeriodoStats>> altas(String unidad, String categoriaId) {
+        if (!FORMATOS.containsKey(unidad)) {
+            throw new IllegalArgumentException("unidad debe ser una de " + FORMATOS.keySet());
+        }
+        AltasKey key = new AltasKey(unidad, categoriaId);
+        return Mono.fromFuture(() -> altas.get(key), true);
+    }
+
+    //Con el indice categoria._id + createAt el $first de cada grupo es el producto mas reciente
+    private Mono<Map<String, CategoriaStats>> categoriaStats(Set<String> ids) {
+        List<AggregationOperation> etapas = new ArrayList<>();
+        if (ids != null) {
+            etapas.add(match(where("categoria.id").in(ids)));
+        }
+        etapas.add(sort(Sort.Direction.DESC, "createAt"));
+        etapas.add(group("categoria.id")
+                .first("categoria.nombre").as("nombre")
+                .count().as("cantidad")
+                .avg("precio").as("precioPromedio")
+                .min("precio").as("precioMin")
+                .max("precio").as("precioMax")
+                .first("id").as("ultimoId")
+                .first("nombre").as("ultimoNombre")
+                .first("createAt").as("ultimoCreateAt"));
+        return mongoTemplate.aggregate(newAggregation(Producto.class, etapas), Document.class)
+                .filter(d -> d.get("_id") != null)
+                .collectMap(d -> d.get("_id").toString(), d -> {
+                    Producto ultimo = new Producto();
+                    ultimo.setId(d.get("ultimoId").toString());
+                    ultimo.setNombre(d.getString("ultimoNombre"));
+                    ultimo.setCreateAt(d.get("ultimoCreateAt", Date.class));
+                    return new CategoriaStats(d.get("_id").toString(), d.getString("nombre"), count(d),
+                            number(d.get("precioPromedio")), number(d.get("precioMin")), number(d.get("precioMax")), ultimo);
+                });
+    }
+
+    private Mono<List<PrecioBucket>> precioBuckets(PreciosKey key) {
+        List<Double> limites = key.limites();
+        if (limites.isEmpty()) {
+            return mongoTemplate.aggregate(newAggregation(Producto.class,
+                                    match(where("precio").ne(null)),
+                                    bucketAuto("precio", key.buckets())
+                                            .andOutputCount().as("cantidad")
+                                            .andOutput("precio").avg().as("precioPromedio")),
+                            Document.class)
+                    .map(d -> {
+                        Document rango = d.get("_id", Document.class);
+                        return new PrecioBucket(number(rango.get("min")), number(rango.get("max")), count(d),
+                                number(d.get("precioPromedio")));
+                    })
+                    .collectList();
+        }
+        //$bucket falla con valores fuera de los limites, se filtran antes
+        Criteria enRango = where("precio").gte(limites.get(0)).lt(limites.get(limites.size() - 1));
+        return mongoTemplate.aggregate(newAggregation(Producto.class,
+                                match(enRango),
+                                bucket("precio").withBoundaries(limites.toArray())
+                                        .andOutputCount().as("cantidad")
+                                        .andOutput("precio").avg().as("precioPromedio")),
+                        Document.class)
+                .map(d -> {
+                    Double desde = number(d.get("_id"));
+                    Double hasta = limites.stream().filter(limite -> limite > desde).findFirst().orElse(null);
+                    return new PrecioBucket(desde, hasta, count(d), number(d.get("precioPromedio")));
+                })
+                .collectList();
+    }
+
+    private Mono<List<PeriodoStats>> periodos(AltasKey key) {
+        Criteria criteria = where("createAt").ne(null);
+        if (key.categoriaId() != null) {
+            criteria.and("categoria.id").is(key.categoriaId());
+        }
+        return mongoTemplate.aggregate(newAggregation(Producto.class,
+                                match(criteria),
+                                project("precio").and(DateOperators.dateOf("createAt").toString(FORMATOS.get(key.unidad()))).as("periodo"),
+                                group("periodo").count().as("cantidad").avg("precio").as("precioPromedio"),
+                                sort(Sort.Direction.ASC, "_id")),
+                        Document.class)
+                .map(d -> new PeriodoStats(d.getString("_id"), count(d), number(d.get("precioPromedio"))))
+                .collectList();
+    }
+
+    private static long count(Document d) {
+        return ((Number) d.get("cantidad")).longValue();
+    }
+
+    private static Double number(Object value) {
+        return value == null ? null : ((Number) value).doubleValue();
+    }
+}
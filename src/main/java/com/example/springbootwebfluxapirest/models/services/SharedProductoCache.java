@@ -0,0 +1,29 @@
+package com.example.springbootwebfluxapirest.models.services;
+
+import com.example.springbootwebfluxapirest.models.documents.Producto;
+import reactor.core.publisher.Mono;
+
+import java.util.Collection;
+import java.util.Map;
+
+//Nivel de cache compartido entre nodos (Redis, Hazelcast...), detras de la cache local de ProductoCache
+public interface SharedProductoCache {
+
+	//Vacio si el producto no esta
+	Mono<Producto> get(String id);
+
+	//Los ids que no esten quedan fuera del mapa
+	Mono<Map<String, Producto>> getAll(Collection<String> ids);
+
+	//No debe reemplazar una version mas nueva del mismo producto, asi una lectura lenta no pisa una escritura
+	Mono<Void> put(Producto producto);
+
+	Mono<Void> evict(String id);
+
+	Mono<Void> evictAll();
+
+	//Si vive dentro de este proceso no hay otros nodos que invalidar
+	default boolean isInProcess() {
+		return false;
+	}
+}
@@ -0,0 +1,164 @@
+package com.example.springbootwebfluxapirest.models.services;
+
+import com.example.springbootwebfluxapirest.models.documents.Producto;
+import com.example.springbootwebfluxapirest.models.storage.PhotoResource;
+import com.example.springbootwebfluxapirest.models.storage.PhotoStorage;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.Map;
+
+import static org.springframework.data.mongodb.core.query.Criteria.where;
+import static org.springframework.data.mongodb.core.query.Query.query;
+
+//Genera miniaturas de las fotos en un pool acotado, fuera del event loop de Netty
+@Component
+public class ThumbnailService {
+
+    private static final Logger log = LoggerFactory.getLogger(ThumbnailService.class);
+
+    private final PhotoStorage photoStorage;
+    private final ReactiveMongoTemplate mongoTemplate;
+    private final ProductoCache cache;
+    private final ApplicationEventPublisher events;
+    private final int[] sizes;
+    private final long maxPixels;
+    private final Scheduler scheduler;
+
+    public ThumbnailService(PhotoStorage photoStorage, ReactiveMongoTemplate mongoTemplate, ProductoCache cache,
+                            ApplicationEventPublisher events,
+                            @Value("${config.photos.thumbnails.sizes}") int[] sizes,
+                            @Value("${config.photos.thumbnails.threads}") int threads,
+                            @Value("${config.photos.thumbnails.queue-capacity}") int queueCapacity,
+                            @Value("${config.photos.thumbnails.max-pixels}") long maxPixels) {
+        this.photoStorage = photoStorage;
+        this.mongoTemplate = mongoTemplate;
+        this.cache = cache;
+        this.events = events;
+        this.sizes = sizes;
+        this.maxPixels = maxPixels;
+        //Con la cola llena el scheduler rechaza el trabajo y la foto se queda sin miniaturas
+        this.scheduler = Schedulers.newBoundedElastic(threads, queueCapacity, "thumbnails");
+    }
+
+    @PreDestroy
+    public void stop() {
+        scheduler.dispose();
+    }
+
+    public void submit(Producto producto) {
+        generate(producto).subscribe(null,
+                e -> log.warn("No se pudieron generar las miniaturas de " + producto.getFoto(), e));
+    }
+
+    Mono<Producto> generate(Producto producto) {
+        String id = producto.getId();
+        String foto = producto.getFoto();
+        return photoStorage.load(foto)
+                .publishOn(scheduler)
+                .mapNotNull(this::read)
+                .flatMapMany(image -> Flux.fromStream(Arrays.stream(sizes).boxed())
+                        .filter(width -> width < image.getWidth())
+                        .concatMap(width -> Mono.fromCallable(() -> encode(resize(image, width), format(image)))
+                                .subscribeOn(scheduler)
+                                .flatMap(bytes -> photoStorage.store(width + "px." + format(image),
+                                        Flux.just(DefaultDataBufferFactory.sharedInstance.wrap(bytes))))
+                                .map(stored -> Map.entry(String.valueOf(width), stored.getKey()))))
+                .collectMap(Map.Entry::getKey, Map.Entry::getValue)
+                .filter(thumbnails -> !thumbnails.isEmpty())
+                //Solo se registran si la foto no cambio mientras se generaban.
+                //La escritura cambia la version: se publica como cualquier UPDATE para el stream y los demas nodos.
+                .flatMap(thumbnails -> mongoTemplate.findAndModify(query(where("id").is(id).and("foto").is(foto)),
+                                new Update().set("thumbnails", thumbnails).set("updateAt", new Date()),
+                                FindAndModifyOptions.options().returnNew(true), Producto.class)
+                        .switchIfEmpty(Mono.defer(() -> delete(thumbnails.values()).then(Mono.empty()))))
+                .doOnNext(saved -> {
+                    cache.put(saved);
+                    events.publishEvent(new ProductoChange(ProductoChange.Operacion.UPDATE, saved,
+                            saved.getCategoria() != null ? saved.getCategoria().getId() : null));
+                });
+    }
+
+    public Mono<Void> delete(Collection<String> thumbnails) {
+        return Flux.fromIterable(thumbnails)
+                .flatMap(key -> photoStorage.delete(key).onErrorResume(e -> Mono.empty()))
+                .then();
+    }
+
+    //Las dimensiones salen del encabezado antes de decodificar: un PNG de pocos KB puede declarar
+    //cientos de megapixeles y ocupar GB en memoria como BufferedImage
+    private BufferedImage read(PhotoResource foto) {
+        try (InputStream input = foto.getResource().getInputStream();
+             ImageInputStream stream = ImageIO.createImageInputStream(input)) {
+            Iterator<ImageReader> readers = stream == null ? null : ImageIO.getImageReaders(stream);
+            if (readers == null || !readers.hasNext()) {
+                return null;
+            }
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(stream, true, true);
+                long pixels = (long) reader.getWidth(0) * reader.getHeight(0);
+                if (pixels > maxPixels) {
+                    throw new IllegalArgumentException("La foto tiene " + pixels + " pixeles, el maximo es " + maxPixels);
+                }
+                return reader.read(0);
+            } finally {
+                reader.dispose();
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    //JPEG no admite transparencia
+    private static String format(BufferedImage image) {
+        return image.getColorModel().hasAlpha() ? "png" : "jpg";
+    }
+
+    private static BufferedImage resize(BufferedImage image, int width) {
+        int height = Math.max(1, Math.round((float) image.getHeight() * width / image.getWidth()));
+        int type = image.getColorModel().hasAlpha() ? BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_INT_RGB;
+        BufferedImage resized = new BufferedImage(width, height, type);
+        Graphics2D graphics = resized.createGraphics();
+        graphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+        graphics.drawImage(image, 0, 0, width, height, null);
+        graphics.dispose();
+        return resized;
+    }
+
+    private static byte[] encode(BufferedImage image, String format) {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        try {
+            ImageIO.write(image, format, output);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return output.toByteArray();
+    }
+}
@@ -0,0 +1,114 @@
+package com.example.springbootwebfluxapirest.models.storage;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.concurrent.atomic.AtomicLong;
+
+//Guarda las fotos en config.uploads.path sin bloquear el event loop de Netty
+@Component
+public class LocalPhotoStorage implements PhotoStorage {
+
+	private final Path directory;
+	private final long maxSize;
+	private final Counter uploadedBytes;
+
+	public LocalPhotoStorage(@Value("${config.uploads.path}") String path,
+							 @Value("${config.photos.max-size}") DataSize maxSize,
+							 MeterRegistry registry) {
+		this.directory = Path.of(path).toAbsolutePath().normalize();
+		this.maxSize = maxSize.toBytes();
+		this.uploadedBytes = Counter.builder("productos.fotos.upload")
+				.baseUnit("bytes")
+				.description("Bytes de fotos recibidos, incluidas las subidas rechazadas")
+				.register(registry);
+	}
+
+	@Override
+	public Mono<StoredPhoto> store(String filename, Flux<DataBuffer> content) {
+		String key = PhotoKeys.newKey(filename);
+		return Mono.fromCallable(() -> {
+					Files.createDirectories(directory);
+					return Files.createTempFile(directory, ".upload-", ".tmp");
+				})
+				.subscribeOn(Schedulers.boundedElastic())
+				.flatMap(tmp -> {
+					MessageDigest digest = sha256();
+					AtomicLong size = new AtomicLong();
+					Flux<DataBuffer> measured = content.handle((buffer, sink) -> {
+						uploadedBytes.increment(buffer.readableByteCount());
+						if (size.addAndGet(buffer.readableByteCount()) > maxSize) {
+							DataBufferUtils.release(buffer);
+							sink.error(new PhotoTooLargeException(maxSize));
+							return;
+						}
+						try (DataBuffer.ByteBufferIterator iterator = buffer.readableByteBuffers()) {
+							iterator.forEachRemaining(digest::update);
+						}
+						sink.next(buffer);
+					});
+					//Se escribe en un temporal y se renombra, nunca queda una foto a medias con su clave final
+					return DataBufferUtils.write(measured, tmp)
+							.then(Mono.fromCallable(() -> {
+								Files.move(tmp, directory.resolve(key), StandardCopyOption.ATOMIC_MOVE);
+								return new StoredPhoto(key, size.get(), HexFormat.of().formatHex(digest.digest()));
+							}).subscribeOn(Schedulers.boundedElastic()))
+							.onErrorResume(e -> Mono.fromCallable(() -> Files.deleteIfExists(tmp))
+									.subscribeOn(Schedulers.boundedElastic())
+									.onErrorResume(ignored -> Mono.empty())
+									.then(Mono.error(e)));
+				});
+	}
+
+	@Override
+	public Mono<PhotoResource> load(String key) {
+		//Un FileSystemResource permite que Netty envie el archivo con sendfile
+		return Mono.fromCallable(() -> {
+					Path file = resolve(key);
+					if (!Files.isReadable(file)) {
+						return null;
+					}
+					return new PhotoResource(new FileSystemResource(file), Files.size(file),
+							Files.getLastModifiedTime(file).toInstant());
+				})
+				.subscribeOn(Schedulers.boundedElastic());
+	}
+
+	@Override
+	public Mono<Void> delete(String key) {
+		return Mono.fromCallable(() -> Files.deleteIfExists(resolve(key)))
+				.subscribeOn(Schedulers.boundedElastic())
+				.then();
+	}
+
+	private Path resolve(String key) {
+		Path file = directory.resolve(key).normalize();
+		if (!file.getParent().equals(directory)) {
+			throw new IllegalArgumentException("Clave de foto invalida: " + key);
+		}
+		return file;
+	}
+
+	private static MessageDigest sha256() {
+		try {
+			return MessageDigest.getInstance("SHA-256");
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+}
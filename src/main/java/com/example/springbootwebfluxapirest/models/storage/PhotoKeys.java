@@ -0,0 +1,26 @@
+package com.example.springbootwebfluxapirest.models.storage;
+
+import java.util.UUID;
+
+public final class PhotoKeys {
+
+	private PhotoKeys() {
+	}
+
+	public static String newKey(String filename) {
+		return UUID.randomUUID() + "-" + sanitize(filename);
+	}
+
+	//Quita la ruta que algunos navegadores envian y los caracteres ':', '\' y ' '
+	public static String sanitize(String filename) {
+		int start = Math.max(filename.lastIndexOf('/'), filename.lastIndexOf('\\')) + 1;
+		StringBuilder sanitized = new StringBuilder(filename.length() - start);
+		for (int i = start; i < filename.length(); i++) {
+			char c = filename.charAt(i);
+			if (c != ':' && c != ' ') {
+				sanitized.append(c);
+			}
+		}
+		return sanitized.toString();
+	}
+}
@@ -0,0 +1,18 @@
+package com.example.springbootwebfluxapirest.models.storage;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import org.springframework.core.io.Resource;
+
+import java.time.Instant;
+
+@Getter
+@AllArgsConstructor
+public class PhotoResource {
+
+	private Resource resource;
+
+	private long size;
+
+	private Instant lastModified;
+}
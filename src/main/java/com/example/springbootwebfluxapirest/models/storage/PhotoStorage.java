@@ -0,0 +1,17 @@
+package com.example.springbootwebfluxapirest.models.storage;
+
+import org.springframework.core.io.buffer.DataBuffer;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+//Almacenamiento de las fotos de los productos, desacoplado del sistema de archivos
+public interface PhotoStorage {
+
+	//Guarda el contenido bajo una clave nueva derivada del nombre original
+	Mono<StoredPhoto> store(String filename, Flux<DataBuffer> content);
+
+	//Vacio si la foto no existe
+	Mono<PhotoResource> load(String key);
+
+	Mono<Void> delete(String key);
+}
@@ -0,0 +1,12 @@
+package com.example.springbootwebfluxapirest.models.storage;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+@ResponseStatus(HttpStatus.PAYLOAD_TOO_LARGE)
+public class PhotoTooLargeException extends RuntimeException {
+
+	public PhotoTooLargeException(long maxSize) {
+		super("La foto supera el tamaño maximo de " + maxSize + " bytes");
+	}
+}
@@ -0,0 +1,16 @@
+package com.example.springbootwebfluxapirest.models.storage;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+@Getter
+@AllArgsConstructor
+public class StoredPhoto {
+
+	private String key;
+
+	private long size;
+
+	//SHA-256 en hexadecimal, calculado mientras se escribe el archivo
+	private String hash;
+}
@@ -1,8 +1,12 @@
 package com.example.springbootwebfluxapirest;
 
+import com.example.springbootwebfluxapirest.handler.ProductoHandler;
+import com.example.springbootwebfluxapirest.models.dao.ProductoVersionMigration;
 import com.example.springbootwebfluxapirest.models.documents.Categoria;
 import com.example.springbootwebfluxapirest.models.documents.Producto;
+import com.example.springbootwebfluxapirest.models.proto.ProductoMessage;
 import com.example.springbootwebfluxapirest.models.services.ProductoService;
+import org.bson.Document;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Test;
 import org.junit.runner.RunWith;
@@ -10,17 +14,26 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.test.autoconfigure.web.reactive.AutoConfigureWebTestClient;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
+import org.springframework.test.context.ActiveProfiles;
 import org.springframework.test.context.junit4.SpringRunner;
 import org.springframework.test.web.reactive.server.WebTestClient;
+import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
 
 import java.util.Collections;
+import java.util.Date;
 import java.util.List;
 
 @AutoConfigureWebTestClient
 @RunWith(SpringRunner.class)
-@SpringBootTest(webEnvironment= SpringBootTest.WebEnvironment.MOCK)
+@SpringBootTest(webEnvironment= SpringBootTest.WebEnvironment.MOCK, properties = {"config.seed.reset=true", "config.productos.cache.shared.type=memory"})
+@ActiveProfiles("seed")
 class SpringBootWebfluxApirestApplicationMockTests {
 
 	@Autowired
@@ -29,6 +42,12 @@ class SpringBootWebfluxApirestApplicationMockTests {
 	@Autowired
 	private ProductoService service;
 
+	@Autowired
+	private ReactiveMongoTemplate mongoTemplate;
+
+	@Autowired
+	private ProductoVersionMigration migration;
+
 	@Value("${config.base.endpoint}")
 	public String url;
 
@@ -48,6 +67,61 @@ class SpringBootWebfluxApirestApplicationMockTests {
 				});
 	}
 
+	@Test
+	void listarPaginadoTest() {
+		String cursor = client.get()
+				.uri(url + "?limit=2")
+				.accept(MediaType.APPLICATION_JSON)
+				.exchange()
+				.expectStatus().isOk()
+				.expectHeader().exists(ProductoHandler.NEXT_CURSOR_HEADER)
+				.expectBodyList(Producto.class).hasSize(2)
+				.returnResult()
+				.getResponseHeaders().getFirst(ProductoHandler.NEXT_CURSOR_HEADER);
+
+		client.get()
+				.uri(url + "?limit=2&after={cursor}", cursor)
+				.accept(MediaType.APPLICATION_JSON)
+				.exchange()
+				.expectStatus().isOk()
+				.expectBodyList(Producto.class)
+				.consumeWith(response -> {
+					List<Producto> productos = response.getResponseBody();
+					assert productos != null;
+					Assertions.assertFalse(productos.isEmpty());
+					Assertions.assertTrue(productos.stream().allMatch(p -> p.getId().compareTo(cursor) > 0));
+				});
+	}
+
+	@Test
+	void listarStreamingTest() {
+		Flux<Producto> productos = client.get()
+				.uri(url)
+				.accept(MediaType.APPLICATION_NDJSON)
+				.exchange()
+				.expectStatus().isOk()
+				.expectHeader().contentTypeCompatibleWith(MediaType.APPLICATION_NDJSON)
+				.returnResult(Producto.class)
+				.getResponseBody();
+
+		StepVerifier.create(productos.take(2))
+				.expectNextCount(2)
+				.verifyComplete();
+	}
+
+	@Test
+	void buscarTest() {
+		client.get()
+				.uri(url + "/search?nombre=Sony&precioMax=1000&sort=-precio")
+				.accept(MediaType.APPLICATION_JSON)
+				.exchange()
+				.expectStatus().isOk()
+				.expectBody()
+				.jsonPath("$.length()").isEqualTo(2)
+				.jsonPath("$[0].nombre").isEqualTo("Sony Notebook")
+				.jsonPath("$[1].nombre").isEqualTo("Sony Camara HD Digital");
+	}
+
 	@Test
 	void getByIdTest() {
 		String productName = "TV Panasonic Pantalla LCD";
@@ -64,6 +138,101 @@ class SpringBootWebfluxApirestApplicationMockTests {
 				.jsonPath("$.precio").isNotEmpty();
 	}
 
+	@Test
+	void getByIdNoModificadoTest() {
+		Producto producto = service.findByNombre("TV Panasonic Pantalla LCD").block();
+		String etag = client.get()
+				.uri(url + "/{id}", Collections.singletonMap("id", producto.getId()))
+				.exchange()
+				.expectStatus().isOk()
+				.expectHeader().cacheControl(CacheControl.noCache())
+				.returnResult(Producto.class)
+				.getResponseHeaders().getETag();
+
+		client.get()
+				.uri(url + "/{id}", Collections.singletonMap("id", producto.getId()))
+				.ifNoneMatch(etag)
+				.exchange()
+				.expectStatus().isNotModified()
+				.expectHeader().valueEquals(HttpHeaders.ETAG, etag)
+				.expectBody().isEmpty();
+	}
+
+	@Test
+	void noModificadoPorFormatoTest() {
+		Producto producto = service.findByNombre("Hewlett Packard Multifuncional").block();
+		String etag = client.get()
+				.uri(url + "/{id}", Collections.singletonMap("id", producto.getId()))
+				.accept(MediaType.APPLICATION_CBOR)
+				.exchange()
+				.expectStatus().isOk()
+				.returnResult(byte[].class)
+				.getResponseHeaders().getETag();
+		Assertions.assertEquals("\"" + producto.getVersion() + "-cbor\"", etag);
+
+		client.get()
+				.uri(url + "/{id}", Collections.singletonMap("id", producto.getId()))
+				.accept(MediaType.APPLICATION_CBOR)
+				.ifNoneMatch(etag)
+				.exchange()
+				.expectStatus().isNotModified()
+				.expectHeader().valueEquals(HttpHeaders.VARY, HttpHeaders.ACCEPT);
+
+		//El ETag del CBOR no valida la copia JSON
+		client.get()
+				.uri(url + "/{id}", Collections.singletonMap("id", producto.getId()))
+				.accept(MediaType.APPLICATION_JSON)
+				.ifNoneMatch(etag)
+				.exchange()
+				.expectStatus().isOk()
+				.expectHeader().valueEquals(HttpHeaders.ETAG, "\"" + producto.getVersion() + "\"");
+	}
+
+	@Test
+	void getByIdsTest() {
+		Producto tv = service.findByNombre("TV Panasonic Pantalla LCD").block();
+		Producto notebook = service.findByNombre("Sony Notebook").block();
+		String inexistente = "000000000000000000000000";
+		client.get()
+				.uri(url + "?ids={ids}&fields=nombre", String.join(",", notebook.getId(), inexistente, tv.getId()))
+				.accept(MediaType.APPLICATION_JSON)
+				.exchange()
+				.expectStatus().isOk()
+				.expectBody()
+				.jsonPath("$.length()").isEqualTo(2)
+				.jsonPath("$[0].nombre").isEqualTo("Sony Notebook")
+				.jsonPath("$[1].nombre").isEqualTo("TV Panasonic Pantalla LCD")
+				.jsonPath("$[0].precio").doesNotExist();
+
+		client.get()
+				.uri(url + "?ids=noEsUnId")
+				.exchange()
+				.expectStatus().isBadRequest();
+	}
+
+	@Test
+	void getByIdProtobufTest() {
+		Producto producto = service.findByNombre("TV Panasonic Pantalla LCD").block();
+		ProductoMessage message = client.get()
+				.uri(url + "/{id}", Collections.singletonMap("id", producto.getId()))
+				.accept(MediaType.APPLICATION_PROTOBUF)
+				.exchange()
+				.expectStatus().isOk()
+				.expectHeader().contentType(MediaType.APPLICATION_PROTOBUF)
+				.expectHeader().valueEquals(HttpHeaders.VARY, HttpHeaders.ACCEPT)
+				.expectBody(ProductoMessage.class)
+				.returnResult()
+				.getResponseBody();
+		Assertions.assertEquals(producto.getId(), message.getId());
+		Assertions.assertEquals("TV Panasonic Pantalla LCD", message.getNombre());
+
+		client.get()
+				.uri(url + "/{id}", Collections.singletonMap("id", producto.getId()))
+				.accept(MediaType.TEXT_HTML)
+				.exchange()
+				.expectStatus().isEqualTo(HttpStatus.NOT_ACCEPTABLE);
+	}
+
 	@Test
 	void createTest() {
 		String productName = "TV Panasonic Pantalla LCD";
@@ -86,6 +255,134 @@ class SpringBootWebfluxApirestApplicationMockTests {
 				});
 	}
 
+	@Test
+	void bulkTest() {
+		Categoria categoria = service.findCategoriaByNombre("Deporte").block();
+		Producto valido = new Producto("Pelota de futbol", 25.5, categoria);
+		Producto invalido = new Producto("", null, categoria);
+		client.post()
+				.uri(url + "/bulk")
+				.accept(MediaType.APPLICATION_JSON)
+				.contentType(MediaType.APPLICATION_NDJSON)
+				.body(Flux.just(valido, invalido), Producto.class)
+				.exchange()
+				.expectStatus().isOk()
+				.expectBody()
+				.jsonPath("$.total").isEqualTo(2)
+				.jsonPath("$.guardados").isEqualTo(1)
+				.jsonPath("$.errores[0].indice").isEqualTo(1);
+
+		Assertions.assertNotNull(service.findByNombre("Pelota de futbol").block());
+	}
+
+	@Test
+	void bulkConservaCreateAtTest() {
+		Producto producto = service.findByNombre("Bianchi Bicicleta").block();
+		Date creado = mongoTemplate.findById(producto.getId(), Producto.class).block().getCreateAt();
+		producto.setCreateAt(new Date(0));
+		producto.setPrecio(310.0);
+
+		StepVerifier.create(service.saveAll(List.of(producto)))
+				.expectNext(List.of())
+				.verifyComplete();
+
+		Producto guardado = mongoTemplate.findById(producto.getId(), Producto.class).block();
+		Assertions.assertEquals(310.0, guardado.getPrecio());
+		Assertions.assertEquals(creado, guardado.getCreateAt());
+	}
+
+	@Test
+	void editarConVersionTest() {
+		Producto producto = service.findByNombre("Sony Camara HD Digital").block();
+		String etag = client.get()
+				.uri(url + "/{id}", Collections.singletonMap("id", producto.getId()))
+				.exchange()
+				.expectStatus().isOk()
+				.returnResult(Producto.class)
+				.getResponseHeaders().getETag();
+
+		Producto cambios = new Producto(null, 199.99);
+		client.put()
+				.uri(url + "/{id}", Collections.singletonMap("id", producto.getId()))
+				.contentType(MediaType.APPLICATION_JSON)
+				.header(HttpHeaders.IF_MATCH, etag)
+				.body(Mono.just(cambios), Producto.class)
+				.exchange()
+				.expectStatus().isCreated()
+				.expectHeader().value(HttpHeaders.ETAG, nuevo -> Assertions.assertNotEquals(etag, nuevo))
+				.expectBody()
+				.jsonPath("$.nombre").isEqualTo("Sony Camara HD Digital")
+				.jsonPath("$.precio").isEqualTo(199.99);
+
+		//El mismo ETag ya no corresponde a la version guardada
+		client.put()
+				.uri(url + "/{id}", Collections.singletonMap("id", producto.getId()))
+				.contentType(MediaType.APPLICATION_JSON)
+				.header(HttpHeaders.IF_MATCH, etag)
+				.body(Mono.just(cambios), Producto.class)
+				.exchange()
+				.expectStatus().isEqualTo(HttpStatus.PRECONDITION_FAILED);
+	}
+
+	@Test
+	void editarDevuelveLoGuardadoTest() {
+		Producto producto = service.findByNombre("TV Sony Bravia OLED 4K Ultra HD").block();
+		Categoria categoria = service.findCategoriaByNombre("Computación").block();
+
+		Producto editado = service.update(producto.getId(), new Producto(null, 2199.0, categoria), producto.getVersion()).block();
+		Producto guardado = mongoTemplate.findById(producto.getId(), Producto.class).block();
+
+		Assertions.assertEquals(guardado.getVersion(), editado.getVersion());
+		Assertions.assertEquals(producto.getVersion() + 1, editado.getVersion());
+		Assertions.assertEquals(guardado.getUpdateAt(), editado.getUpdateAt());
+		Assertions.assertEquals("TV Sony Bravia OLED 4K Ultra HD", editado.getNombre());
+		Assertions.assertEquals(categoria.getId(), guardado.getCategoria().getId());
+	}
+
+	@Test
+	void listadoCambiaETagConCadaEscrituraTest() {
+		String antes = client.get().uri(url).accept(MediaType.APPLICATION_JSON)
+				.exchange()
+				.expectStatus().isOk()
+				.returnResult(Producto.class)
+				.getResponseHeaders().getETag();
+
+		//Dos escrituras seguidas, pueden caer en el mismo milisegundo
+		Producto producto = service.findByNombre("HP Notebook Omen 17").block();
+		service.update(producto.getId(), new Producto(null, 2400.0), null).block();
+		String intermedio = client.get().uri(url).accept(MediaType.APPLICATION_JSON)
+				.exchange()
+				.returnResult(Producto.class)
+				.getResponseHeaders().getETag();
+		service.update(producto.getId(), new Producto(null, 2450.0), null).block();
+
+		client.get().uri(url).accept(MediaType.APPLICATION_JSON)
+				.ifNoneMatch(intermedio)
+				.exchange()
+				.expectStatus().isOk()
+				.expectHeader().value(HttpHeaders.ETAG, etag -> {
+					Assertions.assertNotEquals(antes, etag);
+					Assertions.assertNotEquals(intermedio, etag);
+				});
+	}
+
+	@Test
+	void productoSinVersionTest() {
+		//Documento guardado antes de @Version, sin el campo
+		Document legado = new Document("nombre", "Producto Legado").append("precio", 10.0)
+				.append("categoria", new Document("nombre", "Electrónico"));
+		mongoTemplate.insert(legado, "productos").block();
+		String id = legado.getObjectId("_id").toHexString();
+
+		migration.migrate().block();
+
+		client.get()
+				.uri(url + "/{id}", Collections.singletonMap("id", id))
+				.exchange()
+				.expectStatus().isOk()
+				.expectHeader().valueEquals(HttpHeaders.ETAG, "\"0\"");
+	}
+
 	@Test
 	void eliminarTest() {
 
@@ -104,4 +401,47 @@ class SpringBootWebfluxApirestApplicationMockTests {
 				.expectStatus().isNotFound()
 				.expectBody().isEmpty();
 	}
+
+	@Test
+	void eliminarPorIdsTest() {
+		Categoria categoria = service.findCategoriaByNombre("Muebles").block();
+		Producto mesa = service.save(new Producto("Mesa de centro", 150.0, categoria)).block();
+		Producto silla = service.save(new Producto("Silla de comedor", 45.0, categoria)).block();
+
+		client.head()
+				.uri(url + "/{id}", Collections.singletonMap("id", mesa.getId()))
+				.exchange()
+				.expectStatus().isOk();
+
+		client.post()
+				.uri(url + "/bulk/delete")
+				.contentType(MediaType.APPLICATION_JSON)
+				.bodyValue(List.of(mesa.getId(), silla.getId()))
+				.exchange()
+				.expectStatus().isOk()
+				.expectBody()
+				.jsonPath("$.eliminados").isEqualTo(2);
+
+		client.head()
+				.uri(url + "/{id}", Collections.singletonMap("id", mesa.getId()))
+				.exchange()
+				.expectStatus().isNotFound();
+	}
+
+	@Test
+	void statsCategoriasTest() {
+		client.get()
+				.uri(url + "/stats/categorias")
+				.accept(MediaType.APPLICATION_JSON)
+				.exchange()
+				.expectStatus().isOk()
+				.expectBody()
+				.jsonPath("$[?(@.nombre == 'Electrónico')].cantidad").isNotEmpty()
+				.jsonPath("$[0].precioMin").isNumber();
+
+		client.get()
+				.uri(url + "/stats/precios?limites=100,50")
+				.exchange()
+				.expectStatus().isBadRequest();
+	}
 }
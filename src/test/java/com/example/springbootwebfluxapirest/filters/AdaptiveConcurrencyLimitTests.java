@@ -0,0 +1,56 @@
+package com.example.springbootwebfluxapirest.filters;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+class AdaptiveConcurrencyLimitTests {
+
+	private static final long RTT = TimeUnit.MILLISECONDS.toNanos(10);
+
+	private final AtomicLong now = new AtomicLong();
+
+	@Test
+	void rechazaAlAlcanzarElLimiteTest() {
+		AdaptiveConcurrencyLimit limit = new AdaptiveConcurrencyLimit(2, 1, 10, 2.0, 0.5, now::get);
+
+		Assertions.assertTrue(limit.tryAcquire());
+		Assertions.assertTrue(limit.tryAcquire());
+		Assertions.assertFalse(limit.tryAcquire());
+
+		limit.release();
+		Assertions.assertTrue(limit.tryAcquire());
+	}
+
+	@Test
+	void subeConLatenciaEstableTest() {
+		AdaptiveConcurrencyLimit limit = new AdaptiveConcurrencyLimit(4, 1, 10, 2.0, 0.5, now::get);
+		for (int i = 0; i < 40; i++) {
+			Assertions.assertTrue(limit.tryAcquire());
+			limit.release(RTT, true);
+		}
+		Assertions.assertTrue(limit.getLimit() > 4);
+		Assertions.assertEquals(0, limit.getInFlight());
+	}
+
+	@Test
+	void bajaUnaVezPorVentanaTest() {
+		AdaptiveConcurrencyLimit limit = new AdaptiveConcurrencyLimit(8, 1, 10, 2.0, 0.5, now::get);
+		limit.tryAcquire();
+		limit.release(RTT, true);
+
+		now.addAndGet(RTT * 10);
+		for (int i = 0; i < 5; i++) {
+			limit.tryAcquire();
+			limit.release(RTT * 5, true);
+		}
+		Assertions.assertEquals(4, limit.getLimit());
+
+		now.addAndGet(RTT * 10);
+		limit.tryAcquire();
+		limit.release(RTT, false);
+		Assertions.assertEquals(2, limit.getLimit());
+	}
+}
@@ -0,0 +1,103 @@
+package com.example.springbootwebfluxapirest.filters;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.springframework.context.support.GenericApplicationContext;
+import org.springframework.http.HttpStatus;
+import org.springframework.mock.http.server.reactive.MockServerHttpRequest;
+import org.springframework.mock.web.server.MockServerWebExchange;
+import org.springframework.web.reactive.function.server.RequestPredicates;
+import org.springframework.web.reactive.function.server.RouterFunction;
+import org.springframework.web.reactive.function.server.RouterFunctions;
+import org.springframework.web.reactive.function.server.ServerResponse;
+import org.springframework.web.util.pattern.PathPattern;
+import org.springframework.web.util.pattern.PathPatternParser;
+import reactor.core.Disposable;
+import reactor.core.publisher.Mono;
+
+import java.util.List;
+
+class RateLimitFilterTests {
+
+	private static final List<PathPattern> RUTAS = List.of(
+			PathPatternParser.defaultInstance.parse("/api/v2/productos/{id}"),
+			PathPatternParser.defaultInstance.parse("/api/v2/productos"));
+
+	private final RateLimitProperties properties = new RateLimitProperties();
+
+	RateLimitFilterTests() {
+		properties.getConcurrency().setInitialLimit(1);
+		properties.getConcurrency().setMinLimit(1);
+		properties.getConcurrency().setMaxLimit(1);
+	}
+
+	@Test
+	void streamPorRutaNoOcupaLugarTest() {
+		RateLimitFilter filter = new RateLimitFilter(properties, new SimpleMeterRegistry(), () -> RUTAS);
+
+		//El SSE de cambios queda abierto aunque el cliente no mande Accept
+		MockServerWebExchange changes = MockServerWebExchange.from(MockServerHttpRequest.get("/api/v2/productos/changes"));
+		Disposable abierto = filter.filter(changes, exchange -> Mono.never()).subscribe();
+
+		MockServerWebExchange listado = MockServerWebExchange.from(MockServerHttpRequest.get("/api/v2/productos"));
+		filter.filter(listado, exchange -> Mono.empty()).block();
+		Assertions.assertNull(listado.getResponse().getStatusCode());
+		abierto.dispose();
+	}
+
+	@Test
+	void sinLugarRespondeServicioNoDisponibleTest() {
+		RateLimitFilter filter = new RateLimitFilter(properties, new SimpleMeterRegistry(), () -> RUTAS);
+
+		MockServerWebExchange lento = MockServerWebExchange.from(MockServerHttpRequest.get("/api/v2/productos"));
+		Disposable enCurso = filter.filter(lento, exchange -> Mono.never()).subscribe();
+
+		MockServerWebExchange otro = MockServerWebExchange.from(MockServerHttpRequest.get("/api/v2/productos"));
+		filter.filter(otro, exchange -> Mono.empty()).block();
+		Assertions.assertEquals(HttpStatus.SERVICE_UNAVAILABLE, otro.getResponse().getStatusCode());
+		enCurso.dispose();
+	}
+
+	@Test
+	void pathsSinRutaCompartenCubetaTest() {
+		properties.setRequestsPerSecond(1);
+		properties.setBurst(1);
+		RateLimitFilter filter = new RateLimitFilter(properties, new SimpleMeterRegistry(), () -> RUTAS);
+
+		Assertions.assertNull(filtrar(filter, "/no/existe/1"));
+		Assertions.assertEquals(HttpStatus.TOO_MANY_REQUESTS, filtrar(filter, "/no/existe/2"));
+	}
+
+	@Test
+	void idsDistintosCompartenCubetaTest() {
+		properties.setRequestsPerSecond(1);
+		properties.setBurst(1);
+		RateLimitFilter filter = new RateLimitFilter(properties, new SimpleMeterRegistry(), () -> RUTAS);
+
+		Assertions.assertNull(filtrar(filter, "/api/v2/productos/a"));
+		Assertions.assertEquals(HttpStatus.TOO_MANY_REQUESTS, filtrar(filter, "/api/v2/productos/b"));
+		//El listado es otra ruta, tiene su propia cubeta
+		Assertions.assertNull(filtrar(filter, "/api/v2/productos"));
+	}
+
+	@Test
+	void rutasDeLasRouterFunctionTest() {
+		GenericApplicationContext context = new GenericApplicationContext();
+		context.registerBean("routes", RouterFunction.class, () -> RouterFunctions
+				.route(RequestPredicates.GET("/api/v2/productos/{id}"), request -> ServerResponse.ok().build())
+				.andRoute(RequestPredicates.GET("/api/v2/productos/search").or(RequestPredicates.GET("/api/v3/productos")),
+						request -> ServerResponse.ok().build()));
+		context.refresh();
+
+		List<String> rutas = RoutePatterns.collect(context).stream().map(PathPattern::getPatternString).toList();
+		//La ruta fija va antes que la que tiene {id}, si no /search contaria como un id
+		Assertions.assertEquals(List.of("/api/v2/productos/search", "/api/v3/productos", "/api/v2/productos/{id}"), rutas);
+	}
+
+	private static HttpStatus filtrar(RateLimitFilter filter, String path) {
+		MockServerWebExchange exchange = MockServerWebExchange.from(MockServerHttpRequest.get(path));
+		filter.filter(exchange, e -> Mono.empty()).block();
+		return (HttpStatus) exchange.getResponse().getStatusCode();
+	}
+}
@@ -0,0 +1,35 @@
+package com.example.springbootwebfluxapirest.filters;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+class TokenBucketTests {
+
+	private final AtomicLong now = new AtomicLong();
+
+	@Test
+	void rafagaYEsperaTest() {
+		TokenBucket bucket = new TokenBucket(2, 10, now::get);
+
+		Assertions.assertEquals(0, bucket.tryAcquire());
+		Assertions.assertEquals(0, bucket.tryAcquire());
+		//A 10 por segundo el siguiente token llega en 100 ms
+		Assertions.assertEquals(TimeUnit.MILLISECONDS.toNanos(100), bucket.tryAcquire());
+
+		now.addAndGet(TimeUnit.MILLISECONDS.toNanos(100));
+		Assertions.assertEquals(0, bucket.tryAcquire());
+	}
+
+	@Test
+	void noAcumulaMasQueLaCapacidadTest() {
+		TokenBucket bucket = new TokenBucket(2, 10, now::get);
+		now.addAndGet(TimeUnit.MINUTES.toNanos(1));
+
+		Assertions.assertEquals(0, bucket.tryAcquire());
+		Assertions.assertEquals(0, bucket.tryAcquire());
+		Assertions.assertTrue(bucket.tryAcquire() > 0);
+	}
+}
@@ -0,0 +1,36 @@
+package com.example.springbootwebfluxapirest.handler;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.MediaType;
+
+import java.util.List;
+
+class ProductoCodecsTests {
+
+	private static final List<MediaType> VALORES = List.of(MediaType.APPLICATION_JSON, MediaType.APPLICATION_CBOR,
+			ProductoCodecs.SMILE, MediaType.APPLICATION_PROTOBUF);
+
+	@Test
+	void jsonPorDefectoTest() {
+		Assertions.assertEquals(MediaType.APPLICATION_JSON, ProductoCodecs.negotiate(List.of(), VALORES));
+		Assertions.assertEquals(MediaType.APPLICATION_JSON, ProductoCodecs.negotiate(MediaType.parseMediaTypes("*/*"), VALORES));
+		Assertions.assertEquals(MediaType.APPLICATION_JSON, ProductoCodecs.negotiate(MediaType.parseMediaTypes("application/*"), VALORES));
+	}
+
+	@Test
+	void respetaCalidadTest() {
+		Assertions.assertEquals(MediaType.APPLICATION_PROTOBUF, ProductoCodecs.negotiate(
+				MediaType.parseMediaTypes("application/json;q=0.5, application/x-protobuf"), VALORES));
+		Assertions.assertEquals(ProductoCodecs.SMILE, ProductoCodecs.negotiate(
+				MediaType.parseMediaTypes("application/x-jackson-smile, */*;q=0.1"), VALORES));
+		Assertions.assertEquals(MediaType.APPLICATION_CBOR, ProductoCodecs.negotiate(
+				MediaType.parseMediaTypes("application/cbor;q=0.9, application/json;q=0"), VALORES));
+	}
+
+	@Test
+	void noAceptableTest() {
+		Assertions.assertNull(ProductoCodecs.negotiate(MediaType.parseMediaTypes("text/html"), VALORES));
+		Assertions.assertNull(ProductoCodecs.negotiate(MediaType.parseMediaTypes("application/xml, application/json;q=0"), VALORES));
+	}
+}
@@ -0,0 +1,46 @@
+package com.example.springbootwebfluxapirest.handler;
+
+import com.example.springbootwebfluxapirest.models.documents.Producto;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+
+class ProductoETagsTests {
+
+	@Test
+	void formatoEnElETagTest() {
+		Producto producto = new Producto("Sony Notebook", 846.89);
+		producto.setVersion(3L);
+
+		Assertions.assertEquals("\"3\"", ProductoETags.of(producto, MediaType.APPLICATION_JSON));
+		Assertions.assertEquals("\"3-cbor\"", ProductoETags.of(producto, MediaType.APPLICATION_CBOR));
+		Assertions.assertEquals("\"3-smile\"", ProductoETags.of(producto, ProductoCodecs.SMILE));
+		Assertions.assertEquals("\"3-protobuf\"", ProductoETags.of(producto, MediaType.APPLICATION_PROTOBUF));
+
+		producto.setVersion(null);
+		Assertions.assertNull(ProductoETags.of(producto, MediaType.APPLICATION_CBOR));
+	}
+
+	@Test
+	void ifMatchConFormatoTest() {
+		Assertions.assertEquals(3L, ProductoETags.expectedVersion(ifMatch("\"3\"")));
+		Assertions.assertEquals(3L, ProductoETags.expectedVersion(ifMatch("\"3-cbor\"")));
+		Assertions.assertEquals(3L, ProductoETags.expectedVersion(ifMatch("\"3-protobuf\"")));
+		Assertions.assertNull(ProductoETags.expectedVersion(ifMatch("*")));
+	}
+
+	@Test
+	void ifMatchAjenoNuncaCoincideTest() {
+		Assertions.assertEquals(-1L, ProductoETags.expectedVersion(ifMatch("\"3-xml\"")));
+		Assertions.assertEquals(-1L, ProductoETags.expectedVersion(ifMatch("W/\"3-cbor\"")));
+		Assertions.assertEquals(-1L, ProductoETags.expectedVersion(ifMatch("\"-1\"")));
+		Assertions.assertEquals(-1L, ProductoETags.expectedVersion(ifMatch("\"abc\"")));
+	}
+
+	private static HttpHeaders ifMatch(String valor) {
+		HttpHeaders headers = new HttpHeaders();
+		headers.set(HttpHeaders.IF_MATCH, valor);
+		return headers;
+	}
+}
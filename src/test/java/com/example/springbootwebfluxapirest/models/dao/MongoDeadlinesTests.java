@@ -0,0 +1,93 @@
+package com.example.springbootwebfluxapirest.models.dao;
+
+import com.mongodb.ReadPreference;
+import com.mongodb.TaggableReadPreference;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.DataAccessResourceFailureException;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+class MongoDeadlinesTests {
+
+	private final MongoDeadlines deadlines = new MongoDeadlines(Duration.ofSeconds(2), Duration.ofSeconds(5), 1, Duration.ofMillis(100));
+
+	@Test
+	void lecturaTrabadaFallaEnElPlazoTest() {
+		AtomicInteger intentos = new AtomicInteger();
+		StepVerifier.withVirtualTime(() -> deadlines.read(Mono.never().doOnSubscribe(s -> intentos.incrementAndGet())))
+				.expectSubscription()
+				.expectNoEvent(Duration.ofMillis(1999))
+				.thenAwait(Duration.ofMillis(1))
+				.expectError(DeadlineExceededException.class)
+				.verify(Duration.ofSeconds(5));
+		//El primer intento vence a la mitad del plazo y se reintenta una vez dentro del mismo plazo
+		Assertions.assertEquals(2, intentos.get());
+	}
+
+	@Test
+	void reintentaSoloErroresTransitoriosTest() {
+		AtomicInteger intentos = new AtomicInteger();
+		Mono<String> caido = Mono.defer(() -> intentos.incrementAndGet() == 1
+				? Mono.error(new DataAccessResourceFailureException("socket"))
+				: Mono.just("ok"));
+		StepVerifier.withVirtualTime(() -> deadlines.read(caido))
+				.thenAwait(Duration.ofSeconds(1))
+				.expectNext("ok")
+				.verifyComplete();
+
+		StepVerifier.create(deadlines.read(Mono.error(new IllegalArgumentException())))
+				.expectError(IllegalArgumentException.class)
+				.verify();
+	}
+
+	@Test
+	void fluxNoSeRepiteDespuesDelPrimerElementoTest() {
+		AtomicInteger intentos = new AtomicInteger();
+		Flux<Integer> cortado = Flux.defer(() -> {
+			intentos.incrementAndGet();
+			return Flux.just(1, 2).concatWith(Flux.error(new DataAccessResourceFailureException("socket")));
+		});
+		StepVerifier.create(deadlines.read(cortado))
+				.expectNext(1, 2)
+				.expectError(DataAccessResourceFailureException.class)
+				.verify();
+		Assertions.assertEquals(1, intentos.get());
+	}
+
+	@Test
+	void escrituraNoSeReintentaTest() {
+		AtomicInteger intentos = new AtomicInteger();
+		StepVerifier.withVirtualTime(() -> deadlines.write(Mono.never().doOnSubscribe(s -> intentos.incrementAndGet())))
+				.expectSubscription()
+				.thenAwait(Duration.ofSeconds(5))
+				.expectError(DeadlineExceededException.class)
+				.verify();
+		Assertions.assertEquals(1, intentos.get());
+	}
+
+	@Test
+	void streamSoloPlazoAlPrimerElementoTest() {
+		StepVerifier.withVirtualTime(() -> deadlines.stream(Flux.interval(Duration.ofSeconds(1), Duration.ofSeconds(10)).take(3)))
+				.thenAwait(Duration.ofSeconds(30))
+				.expectNext(0L, 1L, 2L)
+				.verifyComplete();
+	}
+
+	@Test
+	void preferenciaDeLecturaTest() {
+		MongoClientProperties properties = new MongoClientProperties();
+		Assertions.assertEquals(ReadPreference.secondaryPreferred(), properties.listReadPreference());
+
+		properties.setMaxStaleness(Duration.ofSeconds(90));
+		Assertions.assertEquals(90L, ((TaggableReadPreference) properties.listReadPreference()).getMaxStaleness(TimeUnit.SECONDS));
+
+		properties.setListReadPreference("");
+		Assertions.assertNull(properties.listReadPreference());
+	}
+}
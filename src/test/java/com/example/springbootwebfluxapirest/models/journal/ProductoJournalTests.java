@@ -0,0 +1,98 @@
+package com.example.springbootwebfluxapirest.models.journal;
+
+import com.example.springbootwebfluxapirest.models.documents.Producto;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.stream.Stream;
+
+class ProductoJournalTests {
+
+	private final ObjectMapper mapper = new ObjectMapper();
+
+	@TempDir
+	Path directory;
+
+	private static JournalEntry escritura(String operacion) {
+		Producto producto = new Producto("Producto " + operacion, 10.0);
+		producto.setId("id-" + operacion);
+		return JournalEntry.escritura(operacion, producto);
+	}
+
+	private ProductoJournal abrir(int segmentSize) {
+		return new ProductoJournal(directory, segmentSize, true, mapper);
+	}
+
+	private long segmentos() throws IOException {
+		try (Stream<Path> files = Files.list(directory)) {
+			return files.count();
+		}
+	}
+
+	@Test
+	void repiteSoloLasEscriturasSinResultadoTest() throws IOException {
+		try (ProductoJournal journal = abrir(4096)) {
+			Assertions.assertTrue(journal.open().isEmpty());
+			journal.append(List.of(escritura("1"), escritura("2"), escritura("3")));
+			journal.append(List.of(JournalEntry.resultado("2", Operacion.Estado.APLICADA, null)));
+		}
+
+		try (ProductoJournal journal = abrir(4096)) {
+			List<JournalEntry> pendientes = journal.open();
+			Assertions.assertEquals(List.of("1", "3"), pendientes.stream().map(JournalEntry::operacion).toList());
+			Assertions.assertEquals("Producto 3", pendientes.get(1).producto().getNombre());
+		}
+	}
+
+	@Test
+	void borraSegmentosTerminadosTest() throws IOException {
+		try (ProductoJournal journal = abrir(512)) {
+			journal.open();
+			for (int i = 0; i < 10; i++) {
+				journal.append(List.of(escritura(String.valueOf(i))));
+			}
+			Assertions.assertTrue(segmentos() > 1);
+			for (int i = 0; i < 10; i++) {
+				journal.append(List.of(JournalEntry.resultado(String.valueOf(i), Operacion.Estado.APLICADA, null)));
+			}
+			Assertions.assertEquals(1, segmentos());
+		}
+
+		try (ProductoJournal journal = abrir(512)) {
+			Assertions.assertTrue(journal.open().isEmpty());
+		}
+	}
+
+	@Test
+	void ignoraRegistroCortadoTest() throws IOException {
+		try (ProductoJournal journal = abrir(4096)) {
+			journal.open();
+			journal.append(List.of(escritura("1"), escritura("2")));
+		}
+		//Simula una caida a mitad de la segunda escritura
+		Path segmento;
+		try (Stream<Path> files = Files.list(directory)) {
+			segmento = files.findFirst().orElseThrow();
+		}
+		int largo = mapper.writeValueAsBytes(escritura("1")).length;
+		try (RandomAccessFile file = new RandomAccessFile(segmento.toFile(), "rw")) {
+			file.seek(8 + largo + 8 + 5);
+			file.write(new byte[]{'x', 'x', 'x'});
+		}
+
+		try (ProductoJournal journal = abrir(4096)) {
+			Assertions.assertEquals(List.of("1"), journal.open().stream().map(JournalEntry::operacion).toList());
+			journal.append(List.of(escritura("3")));
+		}
+		try (ProductoJournal journal = abrir(4096)) {
+			Assertions.assertEquals(List.of("1", "3"), journal.open().stream().map(JournalEntry::operacion).toList());
+		}
+	}
+}
@@ -0,0 +1,123 @@
+package com.example.springbootwebfluxapirest.models.journal;
+
+import com.example.springbootwebfluxapirest.models.documents.Producto;
+import com.example.springbootwebfluxapirest.models.services.BulkItemError;
+import com.example.springbootwebfluxapirest.models.services.ProductoService;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.Mockito;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.util.unit.DataSize;
+import reactor.core.publisher.Mono;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+
+class WriteBehindServiceTests {
+
+	private final ProductoService productoService = Mockito.mock(ProductoService.class);
+
+	@TempDir
+	Path directory;
+
+	private WriteBehindService writeBehind() throws IOException {
+		return new WriteBehindService(productoService, new ObjectMapper(), directory.toString(), DataSize.ofKilobytes(64),
+				false, 10, Duration.ofMillis(10), 100, Duration.ofMinutes(1));
+	}
+
+	private Operacion.Estado esperar(WriteBehindService service, String id) throws InterruptedException {
+		for (int i = 0; i < 100; i++) {
+			Operacion operacion = service.estado(id).block();
+			if (operacion.getEstado() != Operacion.Estado.PENDIENTE) {
+				return operacion.getEstado();
+			}
+			Thread.sleep(20);
+		}
+		return Operacion.Estado.PENDIENTE;
+	}
+
+	@Test
+	void aplicaEnLotesEInformaErroresTest() throws Exception {
+		Mockito.when(productoService.saveAll(Mockito.anyList()))
+				.thenReturn(Mono.just(List.of(new BulkItemError(1, null, "duplicado"))));
+		WriteBehindService service = writeBehind();
+		Operacion ok = service.submit(new Producto("Mesa", 150.0)).block();
+		Operacion fallida = service.submit(new Producto("Silla", 45.0)).block();
+		Assertions.assertNotNull(ok.getProductoId());
+
+		service.start();
+		Assertions.assertEquals(Operacion.Estado.APLICADA, esperar(service, ok.getId()));
+		Assertions.assertEquals(Operacion.Estado.ERROR, esperar(service, fallida.getId()));
+		Assertions.assertEquals("duplicado", service.estado(fallida.getId()).block().getMensaje());
+		Mockito.verify(productoService, Mockito.times(1)).saveAll(Mockito.anyList());
+		service.stop();
+	}
+
+	@Test
+	void repiteLoPendienteAlArrancarTest() throws Exception {
+		WriteBehindService caido = writeBehind();
+		Operacion operacion = caido.submit(new Producto("Mesa", 150.0)).block();
+		//Se cae antes de aplicar nada
+		caido.stop();
+
+		Mockito.when(productoService.saveAll(Mockito.anyList())).thenReturn(Mono.just(List.of()));
+		WriteBehindService service = writeBehind();
+		Assertions.assertEquals(Operacion.Estado.PENDIENTE, service.estado(operacion.getId()).block().getEstado());
+		service.start();
+		Assertions.assertEquals(Operacion.Estado.APLICADA, esperar(service, operacion.getId()));
+		service.stop();
+	}
+
+	@Test
+	void errorNoTransitorioNoTrabaLaColaTest() throws Exception {
+		Mockito.when(productoService.saveAll(Mockito.anyList()))
+				.thenReturn(Mono.error(new IllegalArgumentException("documento invalido")))
+				.thenReturn(Mono.just(List.of()));
+		WriteBehindService service = writeBehind();
+		Operacion fallida = service.submit(new Producto("Mesa", 150.0)).block();
+
+		service.start();
+		Assertions.assertEquals(Operacion.Estado.ERROR, esperar(service, fallida.getId()));
+		Assertions.assertEquals("documento invalido", service.estado(fallida.getId()).block().getMensaje());
+
+		//El lote siguiente se aplica
+		Operacion siguiente = service.submit(new Producto("Silla", 45.0)).block();
+		Assertions.assertEquals(Operacion.Estado.APLICADA, esperar(service, siguiente.getId()));
+		Mockito.verify(productoService, Mockito.times(2)).saveAll(Mockito.anyList());
+		service.stop();
+	}
+
+	@Test
+	void errorTransitorioSeReintentaTest() throws Exception {
+		Mockito.when(productoService.saveAll(Mockito.anyList()))
+				.thenReturn(Mono.error(new DataAccessResourceFailureException("sin primario")))
+				.thenReturn(Mono.just(List.of()));
+		WriteBehindService service = writeBehind();
+		Operacion operacion = service.submit(new Producto("Mesa", 150.0)).block();
+
+		service.start();
+		Assertions.assertEquals(Operacion.Estado.APLICADA, esperar(service, operacion.getId()));
+		service.stop();
+	}
+
+	@Test
+	void idDelClienteNoSeUsaTest() throws Exception {
+		Mockito.when(productoService.saveAll(Mockito.anyList())).thenReturn(Mono.just(List.of()));
+		WriteBehindService service = writeBehind();
+		Producto producto = new Producto("Mesa", 150.0);
+		//Id de un producto existente: el upsert lo reemplazaria
+		producto.setId("000000000000000000000001");
+		Operacion operacion = service.submit(producto).block();
+		Assertions.assertNotEquals("000000000000000000000001", operacion.getProductoId());
+
+		service.start();
+		Assertions.assertEquals(Operacion.Estado.APLICADA, esperar(service, operacion.getId()));
+		Mockito.verify(productoService).saveAll(Mockito.argThat(productos ->
+				!"000000000000000000000001".equals(productos.get(0).getId())));
+		service.stop();
+	}
+}
@@ -0,0 +1,51 @@
+package com.example.springbootwebfluxapirest.models.proto;
+
+import com.example.springbootwebfluxapirest.models.documents.Categoria;
+import com.example.springbootwebfluxapirest.models.documents.Producto;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.Date;
+import java.util.Map;
+
+class ProductoMessagesTests {
+
+	@Test
+	void idaYVueltaTest() throws Exception {
+		Categoria categoria = new Categoria("Electrónico");
+		categoria.setId("c1");
+		Producto producto = new Producto("Sony Notebook", 846.89, categoria);
+		producto.setId("1");
+		producto.setCreateAt(new Date(1_700_000_000_000L));
+		producto.setFotoHash("abc");
+		producto.setThumbnails(Map.of("200", "1-200.webp"));
+		producto.setVersion(3L);
+
+		byte[] bytes = ProductoMessages.toMessage(producto).toByteArray();
+		Producto copia = ProductoMessages.fromMessage(ProductoMessage.parseFrom(bytes));
+
+		Assertions.assertEquals("1", copia.getId());
+		Assertions.assertEquals("Sony Notebook", copia.getNombre());
+		Assertions.assertEquals(846.89, copia.getPrecio());
+		Assertions.assertEquals(producto.getCreateAt(), copia.getCreateAt());
+		Assertions.assertEquals("c1", copia.getCategoria().getId());
+		Assertions.assertEquals("Electrónico", copia.getCategoria().getNombre());
+		Assertions.assertEquals(Map.of("200", "1-200.webp"), copia.getThumbnails());
+		Assertions.assertEquals(3L, copia.getVersion());
+	}
+
+	@Test
+	void camposNulosNoSeEnvianTest() {
+		ProductoMessage message = ProductoMessages.toMessage(new Producto("TV Panasonic", 456.89, null));
+
+		Assertions.assertFalse(message.hasId());
+		Assertions.assertFalse(message.hasCategoria());
+		Assertions.assertFalse(message.hasVersion());
+
+		Producto copia = ProductoMessages.fromMessage(message);
+		Assertions.assertNull(copia.getId());
+		Assertions.assertNull(copia.getUpdateAt());
+		Assertions.assertNull(copia.getThumbnails());
+		Assertions.assertNull(copia.getVersion());
+	}
+}
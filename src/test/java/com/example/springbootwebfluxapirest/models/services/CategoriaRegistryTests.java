@@ -0,0 +1,118 @@
+package com.example.springbootwebfluxapirest.models.services;
+
+import com.example.springbootwebfluxapirest.models.dao.CategoriaDao;
+import com.example.springbootwebfluxapirest.models.dao.MongoClientProperties;
+import com.example.springbootwebfluxapirest.models.dao.MongoDeadlines;
+import com.example.springbootwebfluxapirest.models.documents.Categoria;
+import com.example.springbootwebfluxapirest.models.documents.Producto;
+import com.mongodb.client.result.UpdateResult;
+import org.bson.Document;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mockito;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.UpdateDefinition;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+import java.time.Duration;
+
+class CategoriaRegistryTests {
+
+	private static final MongoDeadlines DEADLINES = new MongoDeadlines(new MongoClientProperties());
+
+	private final CategoriaDao dao = Mockito.mock(CategoriaDao.class);
+	private final ReactiveMongoTemplate mongoTemplate = Mockito.mock(ReactiveMongoTemplate.class);
+	private final ApplicationEventPublisher events = Mockito.mock(ApplicationEventPublisher.class);
+	private final CategoriaRegistry registry;
+
+	CategoriaRegistryTests() {
+		Mockito.when(dao.findAll()).thenReturn(Flux.empty());
+		Mockito.when(dao.save(Mockito.any(Categoria.class))).thenAnswer(invocation -> Mono.just(invocation.getArgument(0)));
+		registry = new CategoriaRegistry(dao, mongoTemplate, DEADLINES, new ProductoCache(100, Duration.ofMinutes(1)), events,
+				Duration.ofMinutes(5));
+	}
+
+	private static Categoria categoria(String nombre) {
+		Categoria categoria = new Categoria(nombre);
+		categoria.setId("c1");
+		return categoria;
+	}
+
+	@Test
+	void renombrarActualizaProductosEnSegundoPlanoTest() {
+		//Categoria que este nodo nunca cargo: el nombre anterior sale de Mongo
+		Mockito.when(dao.findById("c1")).thenReturn(Mono.just(categoria("Electrónico")));
+		Mockito.when(mongoTemplate.updateMulti(Mockito.any(Query.class), Mockito.any(UpdateDefinition.class), Mockito.eq(Producto.class)))
+				.thenReturn(Mono.just(UpdateResult.acknowledged(1, 1L, null)));
+		Producto producto = new Producto("TV Panasonic Pantalla LCD", 456.89, categoria("Electrónica"));
+		producto.setId("p1");
+		producto.setVersion(4L);
+		Mockito.when(mongoTemplate.find(Mockito.any(Query.class), Mockito.eq(Producto.class))).thenReturn(Flux.just(producto));
+
+		StepVerifier.create(registry.save(categoria("Electrónica")))
+				.assertNext(c -> Assertions.assertEquals("Electrónica", c.getNombre()))
+				.verifyComplete();
+
+		ArgumentCaptor<UpdateDefinition> update = ArgumentCaptor.forClass(UpdateDefinition.class);
+		Mockito.verify(mongoTemplate, Mockito.timeout(1000)).updateMulti(Mockito.any(Query.class), update.capture(), Mockito.eq(Producto.class));
+		Document documento = update.getValue().getUpdateObject();
+		Assertions.assertEquals("Electrónica", documento.get("$set", Document.class).get("categoria.nombre"));
+		Assertions.assertEquals(1, documento.get("$inc", Document.class).get("version"));
+
+		//Solo se leen los campos que necesitan los eventos
+		ArgumentCaptor<Query> productos = ArgumentCaptor.forClass(Query.class);
+		Mockito.verify(mongoTemplate, Mockito.timeout(1000)).find(productos.capture(), Mockito.eq(Producto.class));
+		Assertions.assertEquals(new Document("id", 1).append("version", 1).append("categoria", 1), productos.getValue().getFieldsObject());
+
+		ArgumentCaptor<Object> evento = ArgumentCaptor.forClass(Object.class);
+		Mockito.verify(events, Mockito.timeout(1000)).publishEvent(evento.capture());
+		ProductoChange change = (ProductoChange) evento.getValue();
+		Assertions.assertEquals("p1", change.getId());
+		Assertions.assertEquals("c1", change.getCategoriaAnteriorId());
+	}
+
+	@Test
+	void mismoNombreNoTocaProductosTest() {
+		Mockito.when(dao.findById("c1")).thenReturn(Mono.just(categoria("Electrónico")));
+
+		StepVerifier.create(registry.save(categoria("Electrónico")))
+				.expectNextCount(1)
+				.verifyComplete();
+		Mockito.verify(mongoTemplate, Mockito.never())
+				.updateMulti(Mockito.any(Query.class), Mockito.any(UpdateDefinition.class), Mockito.eq(Producto.class));
+	}
+
+	@Test
+	void errorAlPropagarNoFallaElGuardadoTest() {
+		Mockito.when(dao.findById("c1")).thenReturn(Mono.just(categoria("Electrónico")));
+		Mockito.when(mongoTemplate.updateMulti(Mockito.any(Query.class), Mockito.any(UpdateDefinition.class), Mockito.eq(Producto.class)))
+				.thenReturn(Mono.error(new IllegalStateException("sin primario")));
+
+		StepVerifier.create(registry.save(categoria("Electrónica")))
+				.assertNext(c -> Assertions.assertEquals("Electrónica", c.getNombre()))
+				.verifyComplete();
+	}
+
+	@Test
+	void recargaFallidaConservaLoCargadoTest() {
+		Mockito.when(dao.findAll())
+				.thenReturn(Flux.just(categoria("Electrónico")))
+				.thenReturn(Flux.error(new IllegalStateException("sin primario")));
+		CategoriaRegistry registry = new CategoriaRegistry(dao, mongoTemplate, DEADLINES, new ProductoCache(100, Duration.ofMinutes(1)),
+				events, Duration.ofMillis(10));
+		registry.preload();
+
+		//Las recargas fallan cada 10ms y las lecturas siguen con lo cargado, sin volver a Mongo
+		Mockito.verify(dao, Mockito.timeout(1000).atLeast(3)).findAll();
+		StepVerifier.create(registry.findById("c1"))
+				.assertNext(c -> Assertions.assertEquals("Electrónico", c.getNombre()))
+				.verifyComplete();
+		Mockito.verify(dao, Mockito.never()).findById("c1");
+		registry.stop();
+	}
+}
@@ -0,0 +1,51 @@
+package com.example.springbootwebfluxapirest.models.services;
+
+import com.example.springbootwebfluxapirest.models.documents.Categoria;
+import com.example.springbootwebfluxapirest.models.documents.Producto;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import reactor.test.StepVerifier;
+
+class LocalProductoChangeFeedTests {
+
+	private final LocalProductoChangeFeed feed = new LocalProductoChangeFeed(10);
+
+	@Test
+	void soloCambiosNuevosTest() {
+		feed.onChange(change("1", "deporte"));
+
+		StepVerifier.create(feed.changes(null, null))
+				.then(() -> feed.onChange(change("2", "deporte")))
+				.assertNext(change -> Assertions.assertEquals("2", change.getId()))
+				.thenCancel()
+				.verify();
+	}
+
+	@Test
+	void retomarDesdeTokenTest() {
+		feed.onChange(change("1", "deporte"));
+		feed.onChange(change("2", "muebles"));
+		feed.onChange(change("3", "deporte"));
+
+		StepVerifier.create(feed.changes("1", "deporte"))
+				.assertNext(change -> {
+					Assertions.assertEquals("3", change.getId());
+					Assertions.assertEquals("3", change.getToken());
+				})
+				.thenCancel()
+				.verify();
+	}
+
+	@Test
+	void tokenInvalidoTest() {
+		Assertions.assertThrows(IllegalArgumentException.class, () -> feed.changes("abc", null));
+	}
+
+	private static ProductoChange change(String id, String categoriaId) {
+		Categoria categoria = new Categoria(categoriaId);
+		categoria.setId(categoriaId);
+		Producto producto = new Producto("Producto " + id, 10.0, categoria);
+		producto.setId(id);
+		return new ProductoChange(ProductoChange.Operacion.UPDATE, producto);
+	}
+}
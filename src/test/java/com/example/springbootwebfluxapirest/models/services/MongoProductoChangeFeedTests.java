@@ -0,0 +1,30 @@
+package com.example.springbootwebfluxapirest.models.services;
+
+import org.bson.BsonInt64;
+import org.bson.BsonObjectId;
+import org.bson.BsonString;
+import org.bson.types.ObjectId;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+
+class MongoProductoChangeFeedTests {
+
+	@Test
+	void idDeCualquierTipoTest() {
+		ObjectId objectId = new ObjectId();
+		Assertions.assertEquals(objectId.toHexString(), MongoProductoChangeFeed.id(new BsonObjectId(objectId)));
+		Assertions.assertEquals("sku-123", MongoProductoChangeFeed.id(new BsonString("sku-123")));
+		Assertions.assertEquals("42", MongoProductoChangeFeed.id(new BsonInt64(42)));
+	}
+
+	@Test
+	void categoriaInvalidaFallaAntesDeEscucharTest() {
+		ReactiveMongoTemplate mongoTemplate = Mockito.mock(ReactiveMongoTemplate.class);
+		MongoProductoChangeFeed feed = new MongoProductoChangeFeed(mongoTemplate);
+
+		Assertions.assertThrows(IllegalArgumentException.class, () -> feed.changes(null, "electronica"));
+		Mockito.verifyNoInteractions(mongoTemplate);
+	}
+}
@@ -0,0 +1,89 @@
+package com.example.springbootwebfluxapirest.models.services;
+
+import com.example.springbootwebfluxapirest.models.dao.ProductoDao;
+import com.example.springbootwebfluxapirest.models.documents.Producto;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mockito;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+import reactor.test.StepVerifier;
+
+import java.util.List;
+import java.util.Set;
+
+class ProductoBatchLoaderTests {
+
+	private final ProductoDao dao = Mockito.mock(ProductoDao.class);
+
+	private static Producto producto(String id) {
+		Producto producto = new Producto("Producto " + id, 10.0);
+		producto.setId(id);
+		return producto;
+	}
+
+	@Test
+	@SuppressWarnings("unchecked")
+	void busquedasDuranteUnaConsultaSalenJuntasTest() {
+		Sinks.Many<Producto> primera = Sinks.many().unicast().onBackpressureBuffer();
+		Mockito.when(dao.findAllById(Mockito.<Iterable<String>>any()))
+				.thenReturn(primera.asFlux())
+				.thenReturn(Flux.just(producto("2"), producto("3")));
+		ProductoBatchLoader loader = new ProductoBatchLoader(dao, 100, 1);
+
+		StepVerifier.create(Mono.zip(loader.load("1"), loader.load("2"), loader.load("3")))
+				.then(() -> {
+					primera.tryEmitNext(producto("1"));
+					primera.tryEmitComplete();
+				})
+				.assertNext(t -> {
+					Assertions.assertEquals("1", t.getT1().getId());
+					Assertions.assertEquals("2", t.getT2().getId());
+					Assertions.assertEquals("3", t.getT3().getId());
+				})
+				.verifyComplete();
+
+		ArgumentCaptor<Iterable<String>> ids = ArgumentCaptor.forClass(Iterable.class);
+		Mockito.verify(dao, Mockito.times(2)).findAllById(ids.capture());
+		Assertions.assertEquals(Set.of("1"), ids.getAllValues().get(0));
+		Assertions.assertEquals(Set.of("2", "3"), ids.getAllValues().get(1));
+	}
+
+	@Test
+	@SuppressWarnings("unchecked")
+	void loteRespetaTamañoMaximoTest() {
+		Mockito.when(dao.findAllById(Mockito.<Iterable<String>>any()))
+				.thenAnswer(invocation -> Flux.fromIterable((Iterable<String>) invocation.getArgument(0))
+						.map(ProductoBatchLoaderTests::producto));
+		ProductoBatchLoader loader = new ProductoBatchLoader(dao, 2, 1);
+
+		StepVerifier.create(loader.loadAll(List.of("1", "2", "3", "4", "5")))
+				.assertNext(encontrados -> Assertions.assertEquals(Set.of("1", "2", "3", "4", "5"), encontrados.keySet()))
+				.verifyComplete();
+
+		Mockito.verify(dao, Mockito.times(3)).findAllById(Mockito.<Iterable<String>>any());
+	}
+
+	@Test
+	void inexistenteTerminaVacioTest() {
+		Mockito.when(dao.findAllById(Mockito.<Iterable<String>>any())).thenReturn(Flux.empty());
+		ProductoBatchLoader loader = new ProductoBatchLoader(dao, 100, 1);
+
+		StepVerifier.create(loader.load("1")).verifyComplete();
+	}
+
+	@Test
+	void errorLlegaATodosLosPedidosTest() {
+		Sinks.Many<Producto> mongo = Sinks.many().unicast().onBackpressureBuffer();
+		Mockito.when(dao.findAllById(Mockito.<Iterable<String>>any()))
+				.thenReturn(mongo.asFlux())
+				.thenReturn(Flux.empty());
+		ProductoBatchLoader loader = new ProductoBatchLoader(dao, 100, 1);
+
+		StepVerifier.create(Mono.zip(loader.load("1").then(), loader.load("2").then()))
+				.then(() -> mongo.tryEmitError(new IllegalStateException("mongo caido")))
+				.verifyErrorMessage("mongo caido");
+	}
+}
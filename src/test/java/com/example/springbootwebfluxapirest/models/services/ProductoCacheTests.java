@@ -0,0 +1,197 @@
+package com.example.springbootwebfluxapirest.models.services;
+
+import com.example.springbootwebfluxapirest.models.documents.Producto;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.support.StaticListableBeanFactory;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+import reactor.test.StepVerifier;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+
+class ProductoCacheTests {
+
+	private final ProductoCache cache = new ProductoCache(100, Duration.ofMinutes(1));
+
+	@Test
+	void lecturasConcurrentesCompartenConsultaTest() {
+		AtomicInteger consultas = new AtomicInteger();
+		Sinks.One<Producto> mongo = Sinks.one();
+		Producto producto = new Producto("Apple iPod", 46.89);
+		producto.setId("1");
+
+		Mono<Producto> primera = cache.get("1", id -> mongo.asMono().doOnSubscribe(s -> consultas.incrementAndGet()));
+		Mono<Producto> segunda = cache.get("1", id -> mongo.asMono().doOnSubscribe(s -> consultas.incrementAndGet()));
+
+		StepVerifier.create(Mono.zip(primera, segunda))
+				.then(() -> mongo.tryEmitValue(producto))
+				.assertNext(t -> {
+					Assertions.assertEquals("Apple iPod", t.getT1().getNombre());
+					Assertions.assertEquals("Apple iPod", t.getT2().getNombre());
+				})
+				.verifyComplete();
+		Assertions.assertEquals(1, consultas.get());
+		Assertions.assertEquals(1, cache.stats().missCount());
+		Assertions.assertEquals(1, cache.stats().hitCount());
+	}
+
+	@Test
+	void productoInexistenteNoSeGuardaTest() {
+		StepVerifier.create(cache.get("1", id -> Mono.empty())).verifyComplete();
+		Assertions.assertEquals(0, cache.size());
+	}
+
+	@Test
+	void invalidarFuerzaNuevaConsultaTest() {
+		Producto producto = new Producto("Apple iPod", 46.89);
+		producto.setId("1");
+		cache.put(producto);
+		cache.invalidate("1");
+
+		AtomicInteger consultas = new AtomicInteger();
+		StepVerifier.create(cache.get("1", id -> Mono.fromSupplier(() -> {
+					consultas.incrementAndGet();
+					return producto;
+				})))
+				.assertNext(p -> Assertions.assertEquals("Apple iPod", p.getNombre()))
+				.verifyComplete();
+		Assertions.assertEquals(1, consultas.get());
+	}
+
+	@Test
+	void lecturaEntregaCopiaTest() {
+		Producto producto = new Producto("Apple iPod", 46.89);
+		producto.setId("1");
+		cache.put(producto);
+		//Lo que se modifique despues de guardar no llega a la cache
+		producto.setPrecio(1.0);
+
+		Producto leido = cache.get("1", id -> Mono.empty()).block();
+		Assertions.assertEquals(46.89, leido.getPrecio());
+		leido.setFoto("sin-guardar.jpg");
+
+		StepVerifier.create(cache.get("1", id -> Mono.empty()))
+				.assertNext(p -> {
+					Assertions.assertNotSame(leido, p);
+					Assertions.assertNull(p.getFoto());
+				})
+				.verifyComplete();
+	}
+
+	@Test
+	void nivelCompartidoEvitaConsultaTest() {
+		InMemorySharedProductoCache shared = new InMemorySharedProductoCache(Duration.ofMinutes(1));
+		Producto producto = new Producto("Apple iPod", 46.89);
+		producto.setId("1");
+		//Otro nodo ya lo leyo de Mongo
+		new ProductoCache(100, Duration.ofMinutes(1), shared).put(producto);
+
+		ProductoCache nodo = new ProductoCache(100, Duration.ofMinutes(1), shared);
+		StepVerifier.create(nodo.get("1", id -> Mono.error(new IllegalStateException("no deberia ir a Mongo"))))
+				.assertNext(p -> Assertions.assertEquals("Apple iPod", p.getNombre()))
+				.verifyComplete();
+		Assertions.assertEquals(1, nodo.sharedHits());
+	}
+
+	@Test
+	void invalidarLimpiaAmbosNivelesTest() {
+		InMemorySharedProductoCache shared = new InMemorySharedProductoCache(Duration.ofMinutes(1));
+		ProductoCache nodo = new ProductoCache(100, Duration.ofMinutes(1), shared);
+		Producto producto = new Producto("Apple iPod", 46.89);
+		producto.setId("1");
+		nodo.put(producto);
+		nodo.invalidate("1");
+
+		StepVerifier.create(shared.get("1")).verifyComplete();
+		Assertions.assertEquals(0, nodo.size());
+	}
+
+	@Test
+	void cargaAnteriorAlBorradoNoVuelveAlCompartidoTest() {
+		InMemorySharedProductoCache shared = new InMemorySharedProductoCache(Duration.ofMinutes(1));
+		ProductoCache nodo = new ProductoCache(100, Duration.ofMinutes(1), shared);
+		Sinks.One<Producto> mongo = Sinks.one();
+		Producto producto = new Producto("Apple iPod", 46.89);
+		producto.setId("1");
+
+		//La lectura sale a Mongo, el borrado termina antes de que responda
+		StepVerifier.create(nodo.get("1", id -> mongo.asMono()))
+				.then(() -> {
+					nodo.invalidate("1");
+					mongo.tryEmitValue(producto);
+				})
+				.assertNext(p -> Assertions.assertEquals("Apple iPod", p.getNombre()))
+				.verifyComplete();
+
+		StepVerifier.create(shared.get("1")).verifyComplete();
+		Assertions.assertEquals(0, nodo.size());
+	}
+
+	@Test
+	void invalidarOtroIdNoDescartaLaCargaTest() {
+		InMemorySharedProductoCache shared = new InMemorySharedProductoCache(Duration.ofMinutes(1));
+		ProductoCache nodo = new ProductoCache(100, Duration.ofMinutes(1), shared);
+		Sinks.One<Producto> mongo = Sinks.one();
+		Producto producto = new Producto("Apple iPod", 46.89);
+		producto.setId("1");
+
+		//Con escrituras de otros productos en curso la carga igual llega al nivel compartido
+		StepVerifier.create(nodo.get("1", id -> mongo.asMono()))
+				.then(() -> {
+					nodo.invalidate("2");
+					nodo.invalidateLocal("3", null);
+					mongo.tryEmitValue(producto);
+				})
+				.expectNextCount(1)
+				.verifyComplete();
+
+		StepVerifier.create(shared.get("1"))
+				.assertNext(p -> Assertions.assertEquals("Apple iPod", p.getNombre()))
+				.verifyComplete();
+	}
+
+	@Test
+	void compartidoRemotoSinFeedDeMongoNoArrancaTest() {
+		SharedProductoCache remoto = Mockito.mock(SharedProductoCache.class);
+		StaticListableBeanFactory beans = new StaticListableBeanFactory();
+		beans.addBean("shared", remoto);
+		ObjectProvider<SharedProductoCache> provider = beans.getBeanProvider(SharedProductoCache.class);
+
+		Assertions.assertThrows(IllegalStateException.class,
+				() -> new ProductoCache(100, Duration.ofMinutes(1), provider, "local"));
+		Assertions.assertDoesNotThrow(() -> new ProductoCache(100, Duration.ofMinutes(1), provider, "mongo"));
+	}
+
+	@Test
+	void invalidarLocalConservaMismaVersionTest() {
+		Producto producto = new Producto("Apple iPod", 46.89);
+		producto.setId("1");
+		producto.setVersion(3L);
+		cache.put(producto);
+
+		cache.invalidateLocal("1", 3L);
+		Assertions.assertEquals(1, cache.size());
+
+		cache.invalidateLocal("1", 4L);
+		StepVerifier.create(cache.get("1", id -> Mono.empty())).verifyComplete();
+	}
+
+	@Test
+	void compartidoNoPisaVersionMasNuevaTest() {
+		InMemorySharedProductoCache shared = new InMemorySharedProductoCache(Duration.ofMinutes(1));
+		Producto nuevo = new Producto("Apple iPod", 40.0);
+		nuevo.setId("1");
+		nuevo.setVersion(2L);
+		Producto viejo = new Producto("Apple iPod", 46.89);
+		viejo.setId("1");
+		viejo.setVersion(1L);
+
+		StepVerifier.create(shared.put(nuevo).then(shared.put(viejo)).then(shared.get("1")))
+				.expectNext(nuevo)
+				.verifyComplete();
+	}
+}
@@ -0,0 +1,57 @@
+package com.example.springbootwebfluxapirest.models.services;
+
+import com.example.springbootwebfluxapirest.models.documents.Categoria;
+import com.example.springbootwebfluxapirest.models.documents.Producto;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.bson.Document;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.mongodb.core.query.Query;
+
+import java.util.List;
+
+class ProductoFieldsTests {
+
+	@Test
+	void proyeccionIncluyeIdTest() {
+		Query query = ProductoFields.parse("nombre, precio").apply(new Query());
+		Assertions.assertEquals(new Document("nombre", 1).append("precio", 1).append("id", 1).keySet(),
+				query.getFieldsObject().keySet());
+	}
+
+	@Test
+	void campoDesconocidoTest() {
+		Assertions.assertThrows(IllegalArgumentException.class, () -> ProductoFields.parse("nombre,clave"));
+		Assertions.assertTrue(ProductoFields.parse(" ").isAll());
+	}
+
+	@Test
+	void copiaNoModificaOriginalTest() {
+		Producto producto = new Producto("Apple iPod", 46.89, new Categoria("Electrónico"));
+		producto.setId("1");
+
+		Producto copia = ProductoFields.parse("precio").copy(producto);
+
+		Assertions.assertEquals("1", copia.getId());
+		Assertions.assertEquals(46.89, copia.getPrecio());
+		Assertions.assertNull(copia.getNombre());
+		Assertions.assertNull(copia.getCategoria());
+		Assertions.assertEquals("Apple iPod", producto.getNombre());
+		Assertions.assertSame(producto, ProductoFields.ALL.copy(producto));
+	}
+
+	@Test
+	void vistaSoloLlevaCamposPedidosTest() throws Exception {
+		Producto producto = new Producto("Apple iPod", 46.89, new Categoria("Electrónico"));
+		producto.setId("1");
+		ObjectMapper mapper = new ObjectMapper();
+
+		//Un campo pedido que es nulo se envia; los no pedidos no aparecen
+		String vista = mapper.writeValueAsString(ProductoFields.parse("precio,foto").vista(producto));
+		Assertions.assertEquals("{\"id\":\"1\",\"precio\":46.89,\"foto\":null}", vista);
+		Assertions.assertEquals(List.of("id", "nombre"), List.copyOf(ProductoFields.parse("nombre").vista(producto).keySet()));
+
+		//Sin proyeccion el contrato no cambia: los nulos siguen en la respuesta
+		Assertions.assertTrue(mapper.writeValueAsString(producto).contains("\"foto\":null"));
+	}
+}
@@ -0,0 +1,54 @@
+package com.example.springbootwebfluxapirest.models.services;
+
+import com.example.springbootwebfluxapirest.models.documents.Producto;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+class ProductoServiceMetricsTests {
+
+	private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+	private final ProductoServiceMetrics metrics = new ProductoServiceMetrics(() -> registry);
+
+	@Test
+	void monoSeMideAlTerminarTest() {
+		Producto producto = new Producto("Apple iPod", 46.89);
+		ProductoService target = Mockito.mock(ProductoService.class);
+		Mockito.when(target.findById("1")).thenReturn(Mono.just(producto));
+		ProductoService service = (ProductoService) metrics.postProcessAfterInitialization(target, "productoService");
+
+		Mono<Producto> resultado = service.findById("1");
+		Assertions.assertNull(registry.find(ProductoServiceMetrics.METRIC).timer());
+
+		StepVerifier.create(resultado).expectNext(producto).verifyComplete();
+		Timer timer = registry.get(ProductoServiceMetrics.METRIC)
+				.tag("method", "findById")
+				.tag("outcome", "success")
+				.timer();
+		Assertions.assertEquals(1, timer.count());
+	}
+
+	@Test
+	void fluxConErrorTest() {
+		ProductoService target = Mockito.mock(ProductoService.class);
+		Mockito.when(target.findAll()).thenReturn(Flux.error(new IllegalStateException()));
+		ProductoService service = (ProductoService) metrics.postProcessAfterInitialization(target, "productoService");
+
+		StepVerifier.create(service.findAll()).verifyError(IllegalStateException.class);
+		Assertions.assertEquals(1, registry.get(ProductoServiceMetrics.METRIC)
+				.tag("method", "findAll")
+				.tag("outcome", "error")
+				.timer().count());
+	}
+
+	@Test
+	void otrosBeansNoSeEnvuelvenTest() {
+		Object bean = new Object();
+		Assertions.assertSame(bean, metrics.postProcessAfterInitialization(bean, "otro"));
+	}
+}
@@ -0,0 +1,144 @@
+package com.example.springbootwebfluxapirest.models.services;
+
+import com.example.springbootwebfluxapirest.models.documents.Producto;
+import com.example.springbootwebfluxapirest.models.storage.LocalPhotoStorage;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.bson.Document;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mockito;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.UpdateDefinition;
+import org.springframework.util.unit.DataSize;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Map;
+import java.util.stream.Stream;
+
+class ThumbnailServiceTests {
+
+	@TempDir
+	Path directory;
+
+	private final ReactiveMongoTemplate mongoTemplate = Mockito.mock(ReactiveMongoTemplate.class);
+	private final ApplicationEventPublisher events = Mockito.mock(ApplicationEventPublisher.class);
+	private ThumbnailService service;
+
+	@AfterEach
+	void stop() {
+		if (service != null) {
+			service.stop();
+		}
+	}
+
+	@Test
+	void generaMiniaturasMasChicasQueLaFotoTest() throws Exception {
+		LocalPhotoStorage storage = storage();
+		service = service(storage, 1_000_000);
+		Producto producto = producto(storage, 600, 400);
+		Producto guardado = new Producto("Sony Camara HD Digital", 177.89);
+		guardado.setId("p1");
+		guardado.setVersion(2L);
+		Mockito.when(mongoTemplate.findAndModify(Mockito.any(Query.class), Mockito.any(UpdateDefinition.class),
+						Mockito.any(FindAndModifyOptions.class), Mockito.eq(Producto.class)))
+				.thenReturn(Mono.just(guardado));
+
+		StepVerifier.create(service.generate(producto))
+				.expectNextCount(1)
+				.verifyComplete();
+
+		ArgumentCaptor<Query> query = ArgumentCaptor.forClass(Query.class);
+		ArgumentCaptor<UpdateDefinition> update = ArgumentCaptor.forClass(UpdateDefinition.class);
+		Mockito.verify(mongoTemplate).findAndModify(query.capture(), update.capture(),
+				Mockito.any(FindAndModifyOptions.class), Mockito.eq(Producto.class));
+		//La condicion incluye la foto: si cambio mientras se generaban no se registran
+		Assertions.assertEquals(producto.getFoto(), query.getValue().getQueryObject().get("foto"));
+		@SuppressWarnings("unchecked")
+		Map<String, String> thumbnails = (Map<String, String>) update.getValue().getUpdateObject()
+				.get("$set", Document.class).get("thumbnails");
+		//1000px no es una miniatura de una foto de 600px
+		Assertions.assertEquals(Map.of("150", thumbnails.get("150"), "480", thumbnails.get("480")), thumbnails);
+		BufferedImage miniatura = ImageIO.read(directory.resolve(thumbnails.get("150")).toFile());
+		Assertions.assertEquals(150, miniatura.getWidth());
+		Assertions.assertEquals(100, miniatura.getHeight());
+
+		//La nueva version llega al stream y a las caches de los demas nodos
+		ArgumentCaptor<Object> evento = ArgumentCaptor.forClass(Object.class);
+		Mockito.verify(events).publishEvent(evento.capture());
+		ProductoChange change = (ProductoChange) evento.getValue();
+		Assertions.assertEquals(ProductoChange.Operacion.UPDATE, change.getOperacion());
+		Assertions.assertEquals(2L, change.getProducto().getVersion());
+	}
+
+	@Test
+	void fotoCambiadaDescartaMiniaturasTest() throws Exception {
+		LocalPhotoStorage storage = storage();
+		service = service(storage, 1_000_000);
+		Producto producto = producto(storage, 600, 400);
+		//Otra peticion cambio la foto: la escritura condicional no encuentra el documento
+		Mockito.when(mongoTemplate.findAndModify(Mockito.any(Query.class), Mockito.any(UpdateDefinition.class),
+						Mockito.any(FindAndModifyOptions.class), Mockito.eq(Producto.class)))
+				.thenReturn(Mono.empty());
+
+		StepVerifier.create(service.generate(producto))
+				.verifyComplete();
+		Mockito.verifyNoInteractions(events);
+
+		try (Stream<Path> files = Files.list(directory)) {
+			Assertions.assertEquals(1, files.count());
+		}
+	}
+
+	@Test
+	void fotoConDemasiadosPixelesNoSeDecodificaTest() throws Exception {
+		LocalPhotoStorage storage = storage();
+		service = service(storage, 600 * 400 - 1);
+		Producto producto = producto(storage, 600, 400);
+
+		StepVerifier.create(service.generate(producto))
+				.expectError(IllegalArgumentException.class)
+				.verify(Duration.ofSeconds(5));
+
+		Mockito.verifyNoInteractions(mongoTemplate);
+		try (Stream<Path> files = Files.list(directory)) {
+			Assertions.assertEquals(1, files.count());
+		}
+	}
+
+	private LocalPhotoStorage storage() {
+		return new LocalPhotoStorage(directory.toString(), DataSize.ofMegabytes(1), new SimpleMeterRegistry());
+	}
+
+	private ThumbnailService service(LocalPhotoStorage storage, long maxPixels) {
+		return new ThumbnailService(storage, mongoTemplate, new ProductoCache(100, Duration.ofMinutes(1)), events,
+				new int[]{150, 480, 1000}, 1, 10, maxPixels);
+	}
+
+	private static Producto producto(LocalPhotoStorage storage, int width, int height) throws IOException {
+		ByteArrayOutputStream output = new ByteArrayOutputStream();
+		ImageIO.write(new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB), "png", output);
+		String foto = storage.store("foto.png", Flux.just(DefaultDataBufferFactory.sharedInstance.wrap(output.toByteArray())))
+				.block()
+				.getKey();
+		Producto producto = new Producto("Sony Camara HD Digital", 177.89);
+		producto.setId("p1");
+		producto.setFoto(foto);
+		return producto;
+	}
+}
@@ -0,0 +1,79 @@
+package com.example.springbootwebfluxapirest.models.storage;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+import org.springframework.util.unit.DataSize;
+import reactor.core.publisher.Flux;
+import reactor.test.StepVerifier;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.util.HexFormat;
+import java.util.stream.Stream;
+
+class LocalPhotoStorageTests {
+
+	@TempDir
+	Path directory;
+
+	@Test
+	void storeTest() throws Exception {
+		LocalPhotoStorage storage = new LocalPhotoStorage(directory.toString(), DataSize.ofKilobytes(1), new SimpleMeterRegistry());
+
+		String hash = sha256("hola mundo");
+
+		StepVerifier.create(storage.store("C:\\fotos\\mi foto.jpg", content("hola ", "mundo")))
+				.assertNext(foto -> {
+					Assertions.assertTrue(foto.getKey().endsWith("-mifoto.jpg"));
+					Assertions.assertEquals(10, foto.getSize());
+					Assertions.assertEquals(hash, foto.getHash());
+				})
+				.verifyComplete();
+
+		Assertions.assertEquals(1, files().count());
+	}
+
+	@Test
+	void storeTooLargeTest() throws Exception {
+		LocalPhotoStorage storage = new LocalPhotoStorage(directory.toString(), DataSize.ofBytes(8), new SimpleMeterRegistry());
+
+		StepVerifier.create(storage.store("foto.jpg", content("hola ", "mundo")))
+				.verifyError(PhotoTooLargeException.class);
+
+		Assertions.assertEquals(0, files().count());
+	}
+
+	@Test
+	void loadTest() {
+		LocalPhotoStorage storage = new LocalPhotoStorage(directory.toString(), DataSize.ofKilobytes(1), new SimpleMeterRegistry());
+		StoredPhoto foto = storage.store("foto.jpg", content("hola")).block();
+
+		StepVerifier.create(storage.load(foto.getKey()))
+				.assertNext(resource -> {
+					Assertions.assertEquals(4, resource.getSize());
+					Assertions.assertTrue(resource.getResource().isFile());
+				})
+				.verifyComplete();
+		StepVerifier.create(storage.load("no-existe.jpg")).verifyComplete();
+	}
+
+	private Stream<Path> files() throws IOException {
+		return Files.list(directory);
+	}
+
+	private static Flux<DataBuffer> content(String... parts) {
+		return Flux.fromArray(parts)
+				.map(part -> DefaultDataBufferFactory.sharedInstance.wrap(part.getBytes(StandardCharsets.UTF_8)));
+	}
+
+	private static String sha256(String value) throws Exception {
+		return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(value.getBytes(StandardCharsets.UTF_8)));
+	}
+}